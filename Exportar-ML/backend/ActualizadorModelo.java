@@ -0,0 +1,417 @@
+package backend;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Actualización incremental del modelo publicado: añade registros etiquetados
+ * sin volver a leer el CSV, reajustar la normalización ni barajar, y puede
+ * conservar solo las filas más recientes (ventana deslizante).
+ *
+ * Junto a cada fila se guardan sus valores crudos (sin normalizar). Si los
+ * registros nuevos traen una categoría nueva o amplían un rango min/max, solo
+ * se renormalizan las columnas afectadas, a partir de esos valores crudos; el
+ * resto de columnas y las filas sin cambios se comparten con el modelo anterior.
+ * Los rangos y los códigos solo crecen: expulsar filas de la ventana no los
+ * reduce, así que las predicciones no cambian de escala con cada expulsión.
+ *
+ * El índice del modelo base no se reconstruye en cada lote. Cada llamada a
+ * agregar publica una instantánea que combina ese índice, sin tocarlo, con un
+ * delta de filas añadidas que se recorre por fuerza bruta, y descarta como
+ * lápidas las filas de la base que la ventana ya expulsó (siempre las más
+ * antiguas, así que son un prefijo de la base). Cuando delta y lápidas suman
+ * más de maxDelta filas, o hay que renormalizar columnas (cambian todas las
+ * filas), se consolida: un ModeloKNN con índice completo pasa a ser la base.
+ * Los vecinos siguen el orden (distancia², índice) del modelo reconstruido con
+ * las mismas filas, así que las predicciones son las mismas.
+ *
+ * Un modelo compactado (ver ConjuntoCompacto) sigue compactado: se vuelve a
+ * agrupar con la misma tolerancia al consolidar y al guardar o exportar.
+ *
+ * Cada instantánea se publica de forma atómica: las predicciones en curso
+ * terminan con la anterior, que nunca se modifica. Se admite un único escritor.
+ */
+public class ActualizadorModelo {
+
+    /** Filas añadidas más lápidas a partir de las que se consolida, por defecto. */
+    public static final int MAX_DELTA = 4096;
+
+    private final ServicioInferencia servicio;
+    private final String             modoBusqueda;
+    private final int                ventana;    // 0 = sin limite
+    private final int                maxDelta;
+    private final double             tolerancia; // del modelo base si estaba compactado; NaN si no
+
+    private Preprocesamiento preprocesamiento;
+    private ModeloKNN        publicado;
+
+    // Base consolidada, con su índice; sus primeras 'lapidas' filas ya salieron de la ventana
+    private ModeloKNN base;
+    private byte[]    clasesBase;
+    private int       lapidas;
+
+    // Filas vivas (las de la base sin lápidas y después el delta) y sus valores crudos
+    private final ArrayList<double[]> filas;
+    private final ArrayList<double[]> crudos;
+
+    private long agregadas, expulsadas, columnasRenormalizadas, consolidaciones;
+
+    public ActualizadorModelo(ServicioInferencia servicio, ModeloKNN base, int ventana) {
+        this(servicio, base, ventana, MAX_DELTA);
+    }
+
+    /**
+     * Parte de un modelo ya publicado (o cargado), cuyo índice se reutiliza. Los
+     * valores crudos de sus filas se reconstruyen desde el vector normalizado;
+     * las columnas que nunca se renormalizan conservan el valor original exacto.
+     */
+    public ActualizadorModelo(ServicioInferencia servicio, ModeloKNN base, int ventana, int maxDelta) {
+        if (ventana < 0) throw new IllegalArgumentException("Ventana no válida: " + ventana);
+        if (maxDelta < 0) throw new IllegalArgumentException("Delta máximo no válido: " + maxDelta);
+        this.servicio         = servicio;
+        this.modoBusqueda     = base.modoBusqueda();
+        this.ventana          = ventana;
+        this.maxDelta         = maxDelta;
+        this.preprocesamiento = base.preprocesamiento();
+        this.publicado        = base;
+        this.base             = base;
+
+        ConjuntoCompacto compacto = base.compacto();
+        this.tolerancia = compacto != null ? compacto.tolerancia() : Double.NaN;
+
+        List<double[]> origen = base.filas();
+        int n = origen.size();
+        this.filas  = new ArrayList<>(n);
+        this.crudos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double[] fila = origen.get(i);
+            double[] crudo = new double[Preprocesamiento.DIMS];
+            for (int c = 0; c < crudo.length; c++) crudo[c] = preprocesamiento.desnormalizarColumna(c, fila[c]);
+            filas.add(fila);
+            crudos.add(crudo);
+        }
+        this.clasesBase = clases(filas);
+        if (ventana > 0 && n > ventana) expulsar(n - ventana);
+    }
+
+    /**
+     * Añade los registros (con su stressLevel) y publica el modelo resultante.
+     * Con ventana, se expulsan primero las filas más antiguas que sobren.
+     */
+    public synchronized ModeloKNN agregar(List<Datos.Registro> nuevos) {
+        if (nuevos.isEmpty()) return publicado;
+
+        // 1. Categorías y rangos que cubren también los registros nuevos
+        Preprocesamiento nuevo = preprocesamiento.ampliarCon(nuevos);
+        boolean[] distintas = nuevo.columnasDistintas(preprocesamiento);
+
+        // 2. Ventana: las filas que van a salir ya no se renormalizan
+        int conservar = ventana > 0 ? Math.min(nuevos.size(), ventana) : nuevos.size();
+        if (ventana > 0) expulsar(Math.max(0, filas.size() + conservar - ventana));
+
+        // 3. Renormalizar solo las columnas afectadas (copia de la fila, la publicada queda intacta)
+        int afectadas = 0;
+        for (boolean d : distintas) if (d) afectadas++;
+        if (afectadas > 0) {
+            for (int i = 0; i < filas.size(); i++) {
+                double[] fila  = filas.get(i).clone();
+                double[] crudo = crudos.get(i);
+                for (int c = 0; c < distintas.length; c++) {
+                    if (distintas[c]) fila[c] = nuevo.normalizarColumna(c, crudo[c]);
+                }
+                filas.set(i, fila);
+            }
+            columnasRenormalizadas += afectadas;
+        }
+
+        // 4. Vectorizar las filas nuevas con el preprocesamiento ampliado
+        for (Datos.Registro r : nuevos.subList(nuevos.size() - conservar, nuevos.size())) {
+            filas.add(nuevo.vectorizar(r));
+            crudos.add(nuevo.crudos(r));
+        }
+        agregadas  += nuevos.size();
+        expulsadas += nuevos.size() - conservar;
+        preprocesamiento = nuevo;
+
+        // 5. Índice de la base intacto más delta y lápidas, o consolidar si ya no vale o creció demasiado
+        int vivasBase = base.filas().size() - lapidas;
+        int delta     = filas.size() - vivasBase;
+        if (afectadas > 0 || delta + lapidas > maxDelta) {
+            consolidar();
+        } else {
+            List<double[]> nuevas = Collections.unmodifiableList(new ArrayList<>(filas.subList(vivasBase, filas.size())));
+            publicado = new ModeloKNN(nuevo, new Filas(base.filas(), lapidas, nuevas, tolerancia), modoBusqueda,
+                    new BuscadorDelta(base.buscador(), clasesBase, lapidas, nuevas));
+        }
+        servicio.publicar(publicado);
+        return publicado;
+    }
+
+    // Índice completo sobre las filas vivas, que pasa a ser la base de los lotes siguientes
+    private void consolidar() {
+        List<double[]> vivas = Double.isNaN(tolerancia) ? filas : ConjuntoCompacto.compactar(filas, tolerancia).filas();
+        base       = new ModeloKNN(preprocesamiento, vivas, modoBusqueda);
+        clasesBase = clases(filas);
+        lapidas    = 0;
+        publicado  = base;
+        consolidaciones++;
+    }
+
+    // Quita las filas más antiguas: primero las vivas de la base (pasan a lápidas), después las del delta
+    private void expulsar(int cantidad) {
+        if (cantidad <= 0) return;
+        filas.subList(0, cantidad).clear();
+        crudos.subList(0, cantidad).clear();
+        lapidas = Math.min(base.filas().size(), lapidas + cantidad);
+        expulsadas += cantidad;
+    }
+
+    private static byte[] clases(List<double[]> filas) {
+        byte[] clases = new byte[filas.size()];
+        for (int i = 0; i < clases.length; i++) {
+            double[] fila = filas.get(i);
+            clases[i] = (byte) fila[fila.length - 1];
+        }
+        return clases;
+    }
+
+    public synchronized ModeloKNN publicado()       { return publicado; }
+    public synchronized int       tamano()          { return filas.size(); }
+    public synchronized long      agregadas()       { return agregadas; }
+    public synchronized long      expulsadas()      { return expulsadas; }
+    public synchronized long      consolidaciones() { return consolidaciones; }
+    public int                    ventana()         { return ventana; }
+    public int                    maxDelta()        { return maxDelta; }
+
+    /** Veces que se renormalizó una columna (suma de columnas afectadas por lote). */
+    public synchronized long columnasRenormalizadas() { return columnasRenormalizadas; }
+
+    // =========================================================
+    // INSTANTÁNEA CON DELTA
+    // =========================================================
+
+    /**
+     * Filas de una instantánea sin consolidar: las de la base a partir de las
+     * lápidas y después las añadidas. Ninguna de las dos listas cambia.
+     */
+    private static final class Filas extends AbstractList<double[]> implements RandomAccess {
+        private final List<double[]> base;
+        private final int            lapidas;
+        private final List<double[]> nuevas;
+        private final double         tolerancia;
+
+        Filas(List<double[]> base, int lapidas, List<double[]> nuevas, double tolerancia) {
+            this.base       = base;
+            this.lapidas    = lapidas;
+            this.nuevas     = nuevas;
+            this.tolerancia = tolerancia;
+        }
+
+        @Override
+        public double[] get(int i) {
+            int vivas = base.size() - lapidas;
+            return i < vivas ? base.get(lapidas + i) : nuevas.get(i - vivas);
+        }
+
+        @Override
+        public int size() { return base.size() - lapidas + nuevas.size(); }
+    }
+
+    // Tolerancia con la que reagrupar unas filas sin consolidar de un modelo compactado, o NaN
+    static double toleranciaPendiente(List<double[]> filas) {
+        return filas instanceof Filas ? ((Filas) filas).tolerancia : Double.NaN;
+    }
+
+    /**
+     * Vecinos de la base (pidiendo de más para saltar las lápidas) mezclados con
+     * los del delta por (distancia², índice). El índice es el de la instantánea:
+     * fila de la base menos lápidas, y las añadidas a continuación.
+     */
+    private static final class BuscadorDelta implements BuscadorKNN {
+        private final BuscadorKNN base;
+        private final byte[]      clasesBase;   // por índice de la base
+        private final int         lapidas;
+        private final int         vivasBase;
+        private final int         dims;
+        private final int         numClases;
+        private final double[]    delta;        // filas añadidas, planas
+        private final byte[]      clasesDelta;
+        private final ThreadLocal<Trabajo> trabajo = ThreadLocal.withInitial(Trabajo::new);
+
+        BuscadorDelta(BuscadorKNN base, byte[] clasesBase, int lapidas, List<double[]> nuevas) {
+            this.base        = base;
+            this.clasesBase  = clasesBase;
+            this.lapidas     = lapidas;
+            this.vivasBase   = base.tamano() - lapidas;
+            this.dims        = nuevas.get(0).length - 1;
+            this.delta       = new double[nuevas.size() * dims];
+            this.clasesDelta = new byte[nuevas.size()];
+            int maxClase = 0;
+            for (int i = 0; i < nuevas.size(); i++) {
+                double[] fila = nuevas.get(i);
+                System.arraycopy(fila, 0, delta, i * dims, dims);
+                clasesDelta[i] = (byte) fila[dims];
+                maxClase = Math.max(maxClase, clasesDelta[i]);
+            }
+            for (byte c : clasesBase) maxClase = Math.max(maxClase, c);
+            this.numClases = maxClase + 1;
+        }
+
+        @Override public int tamano() { return vivasBase + clasesDelta.length; }
+        @Override public int dims()   { return dims; }
+
+        @Override
+        public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+            int total = tamano();
+            if (total == 0 || k <= 0) return 0;
+            int kk = Math.min(k, total);
+            Trabajo t = trabajo.get();
+            t.asegurar(kk);
+
+            int enBase  = vecinosBase(consulta, kk, t);
+            int enDelta = vecinosDelta(consulta, kk, t);
+
+            // Mezcla de las dos listas ordenadas (los índices nunca coinciden)
+            int i = 0, j = 0, tam = 0;
+            while (tam < kk && (i < enBase || j < enDelta)) {
+                boolean deBase = j == enDelta || i < enBase
+                        && HeapVecinos.peor(t.distDelta[j], t.idxDelta[j], t.distBase[i], t.idxBase[i]);
+                if (deBase) {
+                    indices[tam] = t.idxBase[i];
+                    if (distancias != null) distancias[tam] = t.distBase[i];
+                    i++;
+                } else {
+                    indices[tam] = t.idxDelta[j];
+                    if (distancias != null) distancias[tam] = t.distDelta[j];
+                    j++;
+                }
+                tam++;
+            }
+            return tam;
+        }
+
+        // Los kk vecinos vivos más cercanos de la base; si las lápidas se llevan demasiados, se pide el doble
+        private int vecinosBase(double[] consulta, int kk, Trabajo t) {
+            if (vivasBase == 0) return 0;
+            int filasBase = base.tamano();
+            int objetivo  = Math.min(kk, vivasBase);
+            int pedir     = Math.min(filasBase, objetivo + Math.min(lapidas, objetivo));
+            while (true) {
+                t.asegurarPedidos(pedir);
+                int tam = base.vecinos(consulta, pedir, t.idx, t.dist);
+                int vivos = 0;
+                for (int p = 0; p < tam && vivos < objetivo; p++) {
+                    if (t.idx[p] < lapidas) continue;
+                    t.idxBase[vivos]  = t.idx[p] - lapidas;
+                    t.distBase[vivos] = t.dist[p];
+                    vivos++;
+                }
+                if (vivos == objetivo || pedir == filasBase) return vivos;
+                pedir = Math.min(filasBase, pedir * 2);
+            }
+        }
+
+        // Fuerza bruta sobre el delta, en el mismo orden de suma que MotorKNN
+        private int vecinosDelta(double[] consulta, int kk, Trabajo t) {
+            int n = clasesDelta.length;
+            if (n == 0) return 0;
+            HeapVecinos heap = t.heap;
+            heap.reiniciar(Math.min(kk, n));
+            for (int i = 0, base = 0; i < n; i++, base += dims) {
+                double sum = 0.0;
+                for (int j = 0; j < dims; j++) {
+                    double diff = consulta[j] - delta[base + j];
+                    sum += diff * diff;
+                }
+                if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, vivasBase + i);
+            }
+            return heap.extraerOrdenados(t.idxDelta, t.distDelta);
+        }
+
+        @Override
+        public int predecir(double[] consulta, int k) {
+            if (tamano() == 0 || k <= 0) return -1;
+            Trabajo t = trabajo.get();
+            t.asegurar(Math.min(k, tamano()));
+            int tam = vecinos(consulta, k, t.vecinos, null);
+            int[] votos = t.votos(numClases);
+            Arrays.fill(votos, 0);
+            for (int v = 0; v < tam; v++) {
+                int i = t.vecinos[v];
+                votos[i < vivasBase ? clasesBase[lapidas + i] : clasesDelta[i - vivasBase]]++;
+            }
+            return MotorKNN.ganadora(votos);
+        }
+    }
+
+    // Buffers por hilo: vecinos pedidos a la base, los vivos de la base, los del delta y el resultado
+    private static class Trabajo extends MotorKNN.Trabajo {
+        int[]    idx       = new int[0];
+        double[] dist      = new double[0];
+        int[]    idxBase   = new int[0];
+        double[] distBase  = new double[0];
+        int[]    idxDelta  = new int[0];
+        double[] distDelta = new double[0];
+        int[]    vecinos   = new int[0];
+
+        void asegurar(int k) {
+            if (idxBase.length >= k) return;
+            idxBase   = new int[k];
+            distBase  = new double[k];
+            idxDelta  = new int[k];
+            distDelta = new double[k];
+            vecinos   = new int[k];
+        }
+
+        void asegurarPedidos(int pedidos) {
+            if (idx.length >= pedidos) return;
+            idx  = new int[pedidos];
+            dist = new double[pedidos];
+        }
+    }
+
+    // =========================================================
+    // USO DESDE LÍNEA DE COMANDOS
+    // =========================================================
+
+    /**
+     * Añade los registros de un CSV a un modelo guardado y lo vuelve a guardar:
+     *   java backend.ActualizadorModelo modelo.knnm nuevos.csv [salida.knnm]
+     * Con -Dknn.ventana=N se conservan solo las N filas más recientes y con
+     * -Dknn.actualizacion.delta=N se cambia el umbral de consolidación.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Uso: ActualizadorModelo <modelo.knnm> <nuevos.csv> [salida.knnm]");
+            return;
+        }
+        String salida = args.length > 2 ? args[2] : args[0];
+        try {
+            ServicioInferencia servicio = new ServicioInferencia();
+            ModeloKNN base = servicio.recargar(args[0], System.getProperty("knn.busqueda", "kd"));
+
+            Datos datos = new Datos();
+            datos.cargarDatosMapeado(args[1]);
+            List<Datos.Registro> nuevos = datos.getRegistros();
+
+            long inicio = System.nanoTime();
+            ActualizadorModelo actualizador = new ActualizadorModelo(servicio, base, Integer.getInteger("knn.ventana", 0),
+                    Integer.getInteger("knn.actualizacion.delta", MAX_DELTA));
+            ModeloKNN modelo = actualizador.agregar(nuevos);
+            long duracion = System.nanoTime() - inicio;
+
+            System.out.printf("Actualización: +%d filas, %d expulsadas, %d columnas renormalizadas, %d consolidaciones, %d filas en el modelo (%.1f ms)%n",
+                    actualizador.agregadas(), actualizador.expulsadas(), actualizador.columnasRenormalizadas(),
+                    actualizador.consolidaciones(), modelo.filas().size(), duracion / 1e6);
+            modelo.guardar(salida);
+            System.out.println("Modelo guardado en " + salida);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Agrupa consultas concurrentes en micro-lotes para que una sola pasada sobre
+ * el entrenamiento (BuscadorKNN.predecirVarios) atienda muchas a la vez.
+ *
+ * Un hilo despachador toma la primera consulta pendiente y espera como mucho
+ * maxEspera a que lleguen más, hasta maxLote. Más espera o lotes más grandes
+ * dan más rendimiento a costa de latencia; maxLote = 1 desactiva el agrupamiento.
+ * Si el buscador del modelo publicado no comparte pasada entre consultas (p. ej.
+ * el árbol KD, ver BuscadorKNN.prediceEnLote), esperar solo añadiría latencia:
+ * cada consulta se resuelve directamente en el hilo que la envía.
+ *
+ * Cada lote se resuelve entero con la instantánea publicada en ese momento:
+ * se normaliza y se busca con el mismo modelo aunque otro hilo lo sustituya.
+ */
+public class AgrupadorLotes implements AutoCloseable {
+
+    // Consultas mínimas por parte al repartir un lote grande entre núcleos
+    private static final int UMBRAL_PARTE = 64;
+
+    private final ServicioInferencia servicio;
+    private final int  maxLote;
+    private final long maxEsperaNanos;
+
+    private final LinkedBlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+    private final Thread despachador;
+    private volatile boolean cerrado;
+
+    private final AtomicLong lotes     = new AtomicLong();
+    private final AtomicLong consultas = new AtomicLong();
+
+    /**
+     * La consulta no se atendió porque el agrupador está cerrado o no hay modelo
+     * publicado; cualquier otra excepción de un futuro es un fallo del motor.
+     */
+    public static class NoDisponible extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        NoDisponible(String mensaje) { super(mensaje); }
+    }
+
+    // Consulta en espera: usuario sin normalizar (stressLevel no se usa), k y resultado
+    private static class Pendiente {
+        final Datos.Registro usuario;
+        final int k;
+        final CompletableFuture<Integer> resultado = new CompletableFuture<>();
+
+        Pendiente(Datos.Registro usuario, int k) {
+            this.usuario = usuario;
+            this.k       = k;
+        }
+    }
+
+    public AgrupadorLotes(ServicioInferencia servicio, int maxLote, long maxEsperaMicros) {
+        if (maxLote < 1) throw new IllegalArgumentException("maxLote debe ser al menos 1: " + maxLote);
+        this.servicio       = servicio;
+        this.maxLote        = maxLote;
+        this.maxEsperaNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(maxEsperaMicros, 0));
+        this.despachador    = new Thread(this::despachar, "knn-lotes");
+        this.despachador.setDaemon(true);
+        this.despachador.start();
+    }
+
+    /** Encola la consulta; el futuro se completa con la clase predicha. */
+    public CompletableFuture<Integer> enviar(Datos.Registro usuario, int k) {
+        Pendiente p = new Pendiente(usuario, k);
+        ModeloKNN modelo = servicio.actual();
+        if (cerrado) {
+            p.resultado.completeExceptionally(new NoDisponible("Agrupador cerrado"));
+        } else if (maxLote == 1 || modelo != null && !modelo.buscador().prediceEnLote()) {
+            // Nada que compartir: sin cola ni espera, en el hilo que llama
+            resolver(Collections.singletonList(p));
+        } else {
+            cola.add(p);
+            // Cerrado justo después de encolar: el despachador puede no verla ya
+            if (cerrado && cola.remove(p)) {
+                p.resultado.completeExceptionally(new NoDisponible("Agrupador cerrado"));
+            }
+        }
+        return p.resultado;
+    }
+
+    public long lotes()     { return lotes.get(); }
+    public long consultas() { return consultas.get(); }
+
+    public double tamanoMedioLote() {
+        long l = lotes.get();
+        return l == 0 ? 0.0 : (double) consultas.get() / l;
+    }
+
+    // =========================================================
+    // DESPACHO
+    // =========================================================
+
+    private void despachar() {
+        List<Pendiente> lote = new ArrayList<>(maxLote);
+        while (!cerrado) {
+            try {
+                lote.add(cola.take());
+                long limite = System.nanoTime() + maxEsperaNanos;
+                while (lote.size() < maxLote) {
+                    long resta = limite - System.nanoTime();
+                    Pendiente p = resta > 0 ? cola.poll(resta, TimeUnit.NANOSECONDS) : cola.poll();
+                    if (p == null) break;
+                    lote.add(p);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            resolver(lote);
+            lote.clear();
+        }
+
+        // Lo que quede en cola no se atenderá
+        for (Pendiente p : lote) p.resultado.completeExceptionally(new NoDisponible("Agrupador cerrado"));
+        Pendiente p;
+        while ((p = cola.poll()) != null) p.resultado.completeExceptionally(new NoDisponible("Agrupador cerrado"));
+    }
+
+    private void resolver(List<Pendiente> lote) {
+        lotes.incrementAndGet();
+        consultas.addAndGet(lote.size());
+
+        ModeloKNN modelo = servicio.actual();
+        if (modelo == null || modelo.vacio()) {
+            for (Pendiente p : lote) p.resultado.completeExceptionally(new NoDisponible("Modelo no cargado"));
+            return;
+        }
+
+        // Normalmente todas las consultas usan el mismo k
+        Map<Integer, List<Pendiente>> porK = new LinkedHashMap<>();
+        for (Pendiente p : lote) porK.computeIfAbsent(p.k, x -> new ArrayList<>()).add(p);
+
+        for (Map.Entry<Integer, List<Pendiente>> grupo : porK.entrySet()) {
+            List<Pendiente> pendientes = grupo.getValue();
+            try {
+                int[] salida = predecir(modelo, pendientes, grupo.getKey());
+                for (int i = 0; i < salida.length; i++) pendientes.get(i).resultado.complete(salida[i]);
+            } catch (RuntimeException e) {
+                for (Pendiente p : pendientes) p.resultado.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static int[] predecir(ModeloKNN modelo, List<Pendiente> pendientes, int k) {
+        Preprocesamiento prep = modelo.preprocesamiento();
+        int m = pendientes.size();
+        double[][] vectores = new double[m][];
+        for (int i = 0; i < m; i++) {
+            Datos.Registro u = pendientes.get(i).usuario;
+            vectores[i] = prep.vectorizar(u.age, u.gender, u.occupation, u.deviceType, u.dailyPhoneHours,
+                    u.socialMediaHours, u.workProductivityScore, u.sleepHours, u.appUsageCount,
+                    u.caffeineIntakeCups, u.weekendScreenTimeHours);
+        }
+
+        BuscadorKNN buscador = modelo.buscador();
+        int[] salida = new int[m];
+        int partes = Math.min(Runtime.getRuntime().availableProcessors(), (m + UMBRAL_PARTE - 1) / UMBRAL_PARTE);
+        if (partes <= 1) {
+            buscador.predecirVarios(vectores, 0, m, k, salida);
+        } else {
+            // Lote grande: una pasada por parte, repartidas entre núcleos
+            IntStream.range(0, partes).parallel().forEach(p ->
+                    buscador.predecirVarios(vectores, (int) ((long) p * m / partes),
+                            (int) ((long) (p + 1) * m / partes), k, salida));
+        }
+        return salida;
+    }
+
+    @Override
+    public void close() {
+        cerrado = true;
+        despachador.interrupt();
+        try {
+            despachador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package backend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Filas normalizadas fuera del heap, para conjuntos de datos mayores que la
+ * memoria de la JVM.
+ *
+ * Cada fila son 12 doubles little-endian (11 características + clase, el mismo
+ * formato que las listas de double[]) en archivos temporales mapeados, uno por
+ * trozo del CSV: ocupan caché de páginas del sistema, no heap, y no cuentan
+ * para -XX:MaxDirectMemorySize. Los archivos se borran en cuanto se mapean; el
+ * espacio se libera al desaparecer el mapeo. Directorio: -Dknn.almacen.dir.
+ *
+ * La carga son dos pasadas sin crear ningún Registro ni double[] por fila:
+ *   1. CargadorCSV parsea en paralelo y cada línea se escribe en bruto (valores
+ *      numéricos, código de categoría local del trozo y stressLevel), mientras se
+ *      acumulan los min/max y el orden de aparición de cada categoría.
+ *   2. Con los rangos y mappings globales, que son los mismos que daría
+ *      Preprocesamiento.ajustar sobre esas líneas, cada fila se normaliza en su sitio.
+ *
+ * Una fracción de las líneas puede ir a un almacén de prueba aparte; la elección
+ * depende solo de la posición de la línea en el archivo, así que es reproducible.
+ * La búsqueda por fuerza bruta (motor()) recorre los segmentos directamente con el
+ * mismo orden (distancia², índice) que MotorKNN. Es la única sobre estas filas:
+ * el árbol KD, SIMD y los cuantizados necesitarían una copia en el heap, así
+ * que ModeloKNN usa motor() con cualquier modo y avisa si se pidió otro.
+ *
+ * MemorySegment (API FFM) no es estable en Java 17, la versión del proyecto; cada
+ * segmento es un MappedByteBuffer, por lo que un trozo no puede superar 2 GB de filas.
+ */
+public class AlmacenFueraHeap {
+
+    // doubles por fila: características + clase
+    static final int ANCHO = Preprocesamiento.DIMS + 1;
+    private static final int BYTES_FILA = ANCHO * Double.BYTES;
+
+    private final DoubleBuffer[] segmentos;
+    private final int[]          primeras; // índice global de la primera fila de cada segmento
+    private final int            filas;
+    private int                  numClases;
+
+    private AlmacenFueraHeap(List<DoubleBuffer> segmentos) {
+        this.segmentos = segmentos.toArray(new DoubleBuffer[0]);
+        this.primeras  = new int[this.segmentos.length + 1];
+        long total = 0;
+        for (int s = 0; s < this.segmentos.length; s++) {
+            primeras[s] = (int) total;
+            total += this.segmentos[s].capacity() / ANCHO;
+        }
+        if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("Demasiadas filas: " + total);
+        this.filas = (int) total;
+        primeras[this.segmentos.length] = filas;
+    }
+
+    /** Almacenes de entrenamiento y prueba con su preprocesamiento común. */
+    public static class Particion {
+        public final Preprocesamiento preprocesamiento;
+        public final AlmacenFueraHeap entrenamiento;
+        public final AlmacenFueraHeap prueba;
+        public final List<String>     errores;
+
+        Particion(Preprocesamiento preprocesamiento, AlmacenFueraHeap entrenamiento,
+                  AlmacenFueraHeap prueba, List<String> errores) {
+            this.preprocesamiento = preprocesamiento;
+            this.entrenamiento    = entrenamiento;
+            this.prueba           = prueba;
+            this.errores          = errores;
+        }
+    }
+
+    // =========================================================
+    // CARGA EN DOS PASADAS
+    // =========================================================
+
+    /**
+     * Carga y normaliza el CSV fuera del heap; fraccionPrueba de las líneas
+     * (0 = ninguna) van al almacén de prueba. Mismas reglas de líneas mal
+     * formadas que Datos.cargarDatos (los mensajes quedan en errores).
+     */
+    public static Particion cargar(String rutaArchivo, double fraccionPrueba) throws IOException {
+        Path directorio = Paths.get(System.getProperty("knn.almacen.dir", System.getProperty("java.io.tmpdir")));
+
+        // Pasada 1: filas en bruto, rangos y categorías por trozo
+        List<TrozoAlmacen> trozos;
+        List<TrozoAlmacen> creados = Collections.synchronizedList(new ArrayList<>());
+        try {
+            trozos = new CargadorCSV().parsear(rutaArchivo, () -> {
+                TrozoAlmacen t = new TrozoAlmacen(directorio, fraccionPrueba);
+                creados.add(t);
+                return t;
+            });
+        } catch (IOException | RuntimeException e) {
+            // Un trozo falló (p. ej. disco lleno): los que seguían en curso no llegan a
+            // terminar(), así que se cierran y borran aquí los archivos de todos
+            synchronized (creados) {
+                for (TrozoAlmacen t : creados) t.descartar();
+            }
+            if (e instanceof UncheckedIOException) throw ((UncheckedIOException) e).getCause();
+            throw e;
+        }
+
+        double[] rangos = Preprocesamiento.rangosVacios();
+        List<Map<String, Integer>> categorias = List.of(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+        List<String> errores = new ArrayList<>();
+        for (TrozoAlmacen t : trozos) {
+            errores.addAll(t.errores);
+            if (t.lineas == 0) continue;
+            for (int i = 0; i < Preprocesamiento.NUM_RANGOS; i += 2) {
+                Preprocesamiento.ampliar(rangos, i, t.rangos[i]);
+                Preprocesamiento.ampliar(rangos, i, t.rangos[i + 1]);
+            }
+            // Trozos en orden y categorías locales en orden de aparición: mismo orden que en el archivo
+            for (int c = 0; c < 3; c++) {
+                for (String valor : t.categorias.get(c).keySet()) {
+                    categorias.get(c).putIfAbsent(valor, categorias.get(c).size());
+                }
+            }
+        }
+        Preprocesamiento p = new Preprocesamiento(categorias.get(0), categorias.get(1), categorias.get(2), rangos);
+
+        // Pasada 2: normalizar en su sitio, trozos en paralelo
+        trozos.parallelStream().forEach(t -> t.normalizar(p, categorias));
+
+        List<DoubleBuffer> entrenamiento = new ArrayList<>(), prueba = new ArrayList<>();
+        for (TrozoAlmacen t : trozos) {
+            if (t.segmentoEntrenamiento != null) entrenamiento.add(t.segmentoEntrenamiento);
+            if (t.segmentoPrueba != null)        prueba.add(t.segmentoPrueba);
+        }
+        AlmacenFueraHeap ent = new AlmacenFueraHeap(entrenamiento);
+        AlmacenFueraHeap pru = new AlmacenFueraHeap(prueba);
+        ent.contarClases();
+        pru.contarClases();
+        return new Particion(p, ent, pru, errores);
+    }
+
+    // Líneas de un trozo escritas en bruto a sus archivos de entrenamiento y prueba
+    private static final class TrozoAlmacen extends CargadorCSV.Trozo {
+        private final double   fraccionPrueba;
+        private final Escritor escritorEntrenamiento, escritorPrueba;
+        private final double[] fila = new double[ANCHO];
+
+        final double[] rangos = Preprocesamiento.rangosVacios();
+        // Código local de cada categoría (gender, occupation, device) en orden de aparición
+        final List<Map<String, Integer>> categorias = List.of(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+        long lineas;
+
+        DoubleBuffer segmentoEntrenamiento, segmentoPrueba;
+
+        TrozoAlmacen(Path directorio, double fraccionPrueba) {
+            this.fraccionPrueba        = fraccionPrueba;
+            this.escritorEntrenamiento = new Escritor(directorio);
+            this.escritorPrueba        = new Escritor(directorio);
+        }
+
+        @Override
+        void fila(long posicion, int age, String gender, String occupation, String deviceType,
+                  double dailyPhoneHours, double socialMediaHours, double workProductivityScore,
+                  double sleepHours, int stressLevel, int appUsageCount, double caffeineIntakeCups,
+                  double weekendScreenTimeHours) {
+            Preprocesamiento.ampliar(rangos, 0,  age);
+            Preprocesamiento.ampliar(rangos, 2,  dailyPhoneHours);
+            Preprocesamiento.ampliar(rangos, 4,  socialMediaHours);
+            Preprocesamiento.ampliar(rangos, 6,  workProductivityScore);
+            Preprocesamiento.ampliar(rangos, 8,  sleepHours);
+            Preprocesamiento.ampliar(rangos, 10, appUsageCount);
+            Preprocesamiento.ampliar(rangos, 12, caffeineIntakeCups);
+            Preprocesamiento.ampliar(rangos, 14, weekendScreenTimeHours);
+
+            // Mismo orden de columnas que Preprocesamiento.vectorizar; la clase aún como stressLevel
+            fila[0]  = age;
+            fila[1]  = codigoLocal(0, gender);
+            fila[2]  = codigoLocal(1, occupation);
+            fila[3]  = codigoLocal(2, deviceType);
+            fila[4]  = dailyPhoneHours;
+            fila[5]  = socialMediaHours;
+            fila[6]  = workProductivityScore;
+            fila[7]  = sleepHours;
+            fila[8]  = appUsageCount;
+            fila[9]  = caffeineIntakeCups;
+            fila[10] = weekendScreenTimeHours;
+            fila[11] = stressLevel;
+            lineas++;
+            (esPrueba(posicion) ? escritorPrueba : escritorEntrenamiento).escribir(fila);
+        }
+
+        private int codigoLocal(int columna, String valor) {
+            Map<String, Integer> mapa = categorias.get(columna);
+            Integer codigo = mapa.get(valor);
+            if (codigo == null) {
+                codigo = mapa.size();
+                mapa.put(valor, codigo);
+            }
+            return codigo;
+        }
+
+        // Elección reproducible a partir de la posición de la línea (mezcla de SplitMix64)
+        private boolean esPrueba(long posicion) {
+            if (fraccionPrueba <= 0) return false;
+            long z = posicion + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            return (z >>> 11) * 0x1.0p-53 < fraccionPrueba;
+        }
+
+        @Override
+        void terminar() {
+            try {
+                segmentoEntrenamiento = escritorEntrenamiento.cerrar();
+                segmentoPrueba        = escritorPrueba.cerrar();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void descartar() {
+            escritorEntrenamiento.descartar();
+            escritorPrueba.descartar();
+        }
+
+        void normalizar(Preprocesamiento p, List<Map<String, Integer>> globales) {
+            // Código local -> código global de cada columna categórica
+            int[][] recodificar = new int[3][];
+            for (int c = 0; c < 3; c++) {
+                recodificar[c] = new int[categorias.get(c).size()];
+                for (Map.Entry<String, Integer> e : categorias.get(c).entrySet()) {
+                    recodificar[c][e.getValue()] = globales.get(c).get(e.getKey());
+                }
+            }
+            for (DoubleBuffer segmento : new DoubleBuffer[]{segmentoEntrenamiento, segmentoPrueba}) {
+                if (segmento == null) continue;
+                double[] v = new double[ANCHO];
+                for (int base = 0; base < segmento.capacity(); base += ANCHO) {
+                    segmento.get(base, v);
+                    for (int c = 0; c < Preprocesamiento.DIMS; c++) {
+                        double crudo = c >= 1 && c <= 3 ? recodificar[c - 1][(int) v[c]] : v[c];
+                        v[c] = p.normalizarColumna(c, crudo);
+                    }
+                    v[Preprocesamiento.DIMS] = Preprocesamiento.clase((int) v[Preprocesamiento.DIMS]);
+                    segmento.put(base, v);
+                }
+            }
+        }
+    }
+
+    // Filas en bruto a un archivo temporal por un búfer directo; al cerrar se mapea y se borra
+    private static final class Escritor {
+        private final Path directorio;
+        private Path        ruta;
+        private FileChannel canal;
+        private ByteBuffer  bufer;
+        private boolean     descartado;
+
+        Escritor(Path directorio) { this.directorio = directorio; }
+
+        void escribir(double[] fila) {
+            try {
+                if (canal == null) abrir();
+                if (bufer.remaining() < BYTES_FILA) vaciar();
+                for (double v : fila) bufer.putDouble(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Sincronizado con descartar: un trozo que sigue en marcha tras un fallo ya no crea su archivo
+        private synchronized void abrir() throws IOException {
+            if (descartado) throw new IOException("Carga cancelada por un fallo en otro trozo");
+            ruta  = Files.createTempFile(directorio, "knn-almacen-", ".bin");
+            canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            bufer = ByteBuffer.allocateDirect(256 * BYTES_FILA).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        // Tras un fallo de la carga: cierra el canal y borra el archivo si llegó a crearse
+        synchronized void descartar() {
+            descartado = true;
+            if (ruta == null) return;
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Ya cerrado
+            }
+            try {
+                Files.deleteIfExists(ruta);
+            } catch (IOException e) {
+                ruta.toFile().deleteOnExit();
+            }
+        }
+
+        private void vaciar() throws IOException {
+            bufer.flip();
+            while (bufer.hasRemaining()) canal.write(bufer);
+            bufer.clear();
+        }
+
+        // Segmento mapeado con las filas escritas, o null si no hubo ninguna
+        DoubleBuffer cerrar() throws IOException {
+            if (canal == null) return null;
+            try {
+                vaciar();
+                long tamano = canal.size();
+                if (tamano > Integer.MAX_VALUE) throw new IOException("Trozo de más de 2 GB: " + ruta);
+                MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+                return mapa.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            } finally {
+                canal.close();
+                bufer = null;
+                // El mapeo sigue siendo válido; si el sistema no deja borrar un archivo mapeado, al salir
+                try {
+                    Files.delete(ruta);
+                } catch (IOException e) {
+                    ruta.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private void contarClases() {
+        int maxClase = 0;
+        for (DoubleBuffer s : segmentos) {
+            for (int base = Preprocesamiento.DIMS; base < s.capacity(); base += ANCHO) {
+                maxClase = Math.max(maxClase, (int) s.get(base));
+            }
+        }
+        numClases = maxClase + 1;
+    }
+
+    // =========================================================
+    // ACCESO
+    // =========================================================
+
+    public int tamano() { return filas; }
+
+    /** Bytes de filas fuera del heap. */
+    public long bytes() { return (long) filas * BYTES_FILA; }
+
+    public double valor(int fila, int dim) {
+        int s = segmento(fila);
+        return segmentos[s].get((fila - primeras[s]) * ANCHO + dim);
+    }
+
+    public int etiqueta(int fila) { return (int) valor(fila, Preprocesamiento.DIMS); }
+
+    private int segmento(int fila) {
+        // Los segmentos nunca están vacíos: cada primera fila aparece una sola vez
+        int s = Arrays.binarySearch(primeras, fila);
+        return s >= 0 ? s : -s - 2;
+    }
+
+    /** Vista de solo lectura con el formato clásico (características + clase), fila a fila. */
+    public List<double[]> filas() {
+        return new Filas();
+    }
+
+    private class Filas extends AbstractList<double[]> implements RandomAccess {
+        @Override
+        public double[] get(int i) {
+            if (i < 0 || i >= filas) throw new IndexOutOfBoundsException("Fila " + i + " de " + filas);
+            int s = segmento(i);
+            double[] fila = new double[ANCHO];
+            segmentos[s].get((i - primeras[s]) * ANCHO, fila);
+            return fila;
+        }
+
+        @Override
+        public int size() { return filas; }
+
+        AlmacenFueraHeap almacen() { return AlmacenFueraHeap.this; }
+    }
+
+    // Devuelve el almacén detrás de una lista obtenida con filas(), o null
+    static AlmacenFueraHeap origen(List<double[]> lista) {
+        return lista instanceof Filas ? ((Filas) lista).almacen() : null;
+    }
+
+    // =========================================================
+    // BÚSQUEDA SOBRE LOS SEGMENTOS
+    // =========================================================
+
+    /** Búsqueda por fuerza bruta directamente sobre los segmentos. */
+    public BuscadorKNN motor() {
+        return new Motor();
+    }
+
+    private class Motor implements BuscadorKNN {
+        private final ThreadLocal<MotorKNN.Trabajo> trabajo = ThreadLocal.withInitial(MotorKNN.Trabajo::new);
+        private final int dims = Preprocesamiento.DIMS;
+
+        @Override public int tamano() { return filas; }
+        @Override public int dims()   { return dims; }
+
+        @Override
+        public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+            if (filas == 0 || k <= 0) return 0;
+            HeapVecinos heap = trabajo.get().heap;
+            seleccionar(consulta, Math.min(k, filas), heap);
+            return heap.extraerOrdenados(indices, distancias);
+        }
+
+        @Override
+        public int predecir(double[] consulta, int k) {
+            if (filas == 0 || k <= 0) return -1;
+            MotorKNN.Trabajo t = trabajo.get();
+            long t0 = Metricas.inicio();
+            seleccionar(consulta, Math.min(k, filas), t.heap);
+            long t1 = Metricas.busqueda(t0, filas);
+            int clase = votar(t.heap, t.votos(numClases));
+            Metricas.latencia(Metricas.VOTACION, t1);
+            return clase;
+        }
+
+        // Mismo voto que MotorKNN.votar, con la clase leída del segmento
+        private int votar(HeapVecinos heap, int[] votos) {
+            Arrays.fill(votos, 0);
+            for (int i = 0; i < heap.tam; i++) votos[etiqueta(heap.idx[i])]++;
+            return MotorKNN.ganadora(votos);
+        }
+
+        @Override
+        public boolean prediceEnLote() { return true; }
+
+        // Una sola lectura de los segmentos para todo el lote (ver MotorKNN.predecirVarios)
+        @Override
+        public void predecirVarios(double[][] consultas, int desde, int hasta, int k, int[] salida) {
+            if (filas == 0 || k <= 0) {
+                for (int q = desde; q < hasta; q++) salida[q] = -1;
+                return;
+            }
+            MotorKNN.Trabajo t = trabajo.get();
+            HeapVecinos[] heaps = t.heaps(hasta - desde);
+            for (HeapVecinos heap : heaps) heap.reiniciar(Math.min(k, filas));
+
+            double[] fila = new double[dims];
+            for (int s = 0; s < segmentos.length; s++) {
+                DoubleBuffer segmento = segmentos[s];
+                for (int i = primeras[s], base = 0; i < primeras[s + 1]; i++, base += ANCHO) {
+                    segmento.get(base, fila);
+                    for (int q = desde; q < hasta; q++) {
+                        double[] consulta = consultas[q];
+                        double sum = 0.0;
+                        for (int j = 0; j < dims; j++) {
+                            double diff = consulta[j] - fila[j];
+                            sum += diff * diff;
+                        }
+                        HeapVecinos heap = heaps[q - desde];
+                        if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, i);
+                    }
+                }
+            }
+
+            Metricas.filasRecorridas((long) filas * (hasta - desde));
+            int[] votos = t.votos(numClases);
+            for (int q = desde; q < hasta; q++) salida[q] = votar(heaps[q - desde], votos);
+        }
+
+        private void seleccionar(double[] consulta, int kk, HeapVecinos heap) {
+            heap.reiniciar(kk);
+            for (int s = 0; s < segmentos.length; s++) {
+                DoubleBuffer segmento = segmentos[s];
+                for (int i = primeras[s], base = 0; i < primeras[s + 1]; i++, base += ANCHO) {
+                    double sum = 0.0;
+                    for (int j = 0; j < dims; j++) {
+                        double diff = consulta[j] - segmento.get(base + j);
+                        sum += diff * diff;
+                    }
+                    if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, i);
+                }
+            }
+        }
+    }
+
+    // =========================================================
+    // COMPARACIÓN DE MEMORIA
+    // =========================================================
+
+    /**
+     * Carga el CSV por el camino en heap (Datos + normalizarDatos) o por este
+     * almacén y muestra tiempo, heap ocupado y recolecciones. Para ver el límite,
+     * ejecutar cada modo con un heap pequeño:
+     *
+     *   java -Xmx64m backend.AlmacenFueraHeap [csv] [heap|fuera]
+     */
+    public static void main(String[] args) throws IOException {
+        String ruta = args.length > 0 ? args[0] : "backend/Stress level classification.csv";
+        boolean fuera = args.length < 2 || "fuera".equals(args[1]);
+
+        long inicio = System.nanoTime();
+        Object retenido;
+        int total;
+        if (fuera) {
+            Particion p = cargar(ruta, 0.0);
+            retenido = p;
+            total = p.entrenamiento.tamano();
+            System.out.printf("Fuera del heap: %d filas, %d MB mapeados%n", total, p.entrenamiento.bytes() >> 20);
+        } else {
+            Datos datos = new Datos();
+            datos.cargarDatosMapeado(ruta);
+            List<double[]> normalizados = Modelo.normalizarDatos(datos.getRegistros());
+            retenido = new Object[]{datos, normalizados};
+            total = normalizados.size();
+        }
+        long duracion = System.nanoTime() - inicio;
+
+        long recolecciones = 0, msGC = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            recolecciones += Math.max(0, gc.getCollectionCount());
+            msGC += Math.max(0, gc.getCollectionTime());
+        }
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%s: %d filas en %.1f ms | heap retenido %.1f MB | %d recolecciones (%d ms)%n",
+                fuera ? "fuera" : "heap", total, duracion / 1e6, heap / 1048576.0, recolecciones, msGC);
+        Reference.reachabilityFence(retenido);
+    }
+}
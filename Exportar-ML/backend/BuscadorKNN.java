@@ -0,0 +1,41 @@
+package backend;
+
+/**
+ * Búsqueda exacta de los k vecinos más cercanos sobre el conjunto de entrenamiento.
+ *
+ * Todas las implementaciones usan el mismo orden (distancia², índice de fila),
+ * de modo que devuelven exactamente los mismos vecinos y la misma predicción.
+ */
+public interface BuscadorKNN {
+
+    int tamano();
+
+    int dims();
+
+    /**
+     * Escribe en indices/distancias los k vecinos más cercanos, del más cercano
+     * al más lejano (distancias al cuadrado; el arreglo de distancias puede ser null).
+     * Devuelve cuántos vecinos se escribieron (min(k, tamano())).
+     */
+    int vecinos(double[] consulta, int k, int[] indices, double[] distancias);
+
+    /** Clase mayoritaria entre los k vecinos, o -1 si no hay entrenamiento. */
+    int predecir(double[] consulta, int k);
+
+    /**
+     * Predice consultas[desde..hasta) en salida[desde..hasta). Las búsquedas por
+     * fuerza bruta lo sobrescriben para atender todas en una sola pasada sobre
+     * las filas de entrenamiento; el resultado es el mismo que con predecir.
+     */
+    default void predecirVarios(double[][] consultas, int desde, int hasta, int k, int[] salida) {
+        for (int q = desde; q < hasta; q++) salida[q] = predecir(consultas[q], k);
+    }
+
+    /**
+     * true si predecirVarios comparte una pasada entre las consultas del lote,
+     * es decir, si esperar a juntar consultas (ver AgrupadorLotes) compensa.
+     */
+    default boolean prediceEnLote() {
+        return false;
+    }
+}
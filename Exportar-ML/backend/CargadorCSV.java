@@ -0,0 +1,353 @@
+package backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cargador del CSV de estrés que mapea el archivo en memoria y parsea los
+ * números directamente desde los bytes, sin crear un String por campo.
+ *
+ * El archivo se divide en trozos que terminan en salto de línea y se parsean
+ * en paralelo; los registros y los mensajes de error se devuelven en el orden
+ * del archivo. Los valores categóricos (Gender, Occupation, Device_Type) se
+ * internan, de modo que todos los registros comparten las mismas instancias.
+ *
+ * Las reglas son las de Datos.cargarDatos: se salta el encabezado y las líneas
+ * en blanco, se informan las líneas con menos de 13 columnas (contadas como
+ * String.split, sin los campos vacíos del final) y las que no se pueden parsear.
+ */
+public class CargadorCSV {
+
+    private static final int COLUMNAS = 13;
+
+    // Tamaño de trozo: bastante grande para amortizar el mapeo, menor que el límite de 2 GB
+    private static final long TROZO_MIN = 1L << 20;
+    private static final long TROZO_MAX = 256L << 20;
+
+    // Valores categóricos compartidos entre todos los trozos
+    private final ConcurrentHashMap<String, String> internados = new ConcurrentHashMap<>();
+
+    /** Resultado de la carga: registros válidos y mensajes de líneas descartadas. */
+    public static class Resultado {
+        public final List<Datos.Registro> registros;
+        public final List<String>         errores;
+
+        Resultado(List<Datos.Registro> registros, List<String> errores) {
+            this.registros = registros;
+            this.errores   = errores;
+        }
+    }
+
+    public Resultado cargar(String rutaArchivo) throws IOException {
+        List<Trozo> parseados = parsear(rutaArchivo, Trozo::new);
+
+        int total = 0;
+        for (Trozo t : parseados) total += t.registros.size();
+        List<Datos.Registro> registros = new ArrayList<>(total);
+        List<String>         errores   = new ArrayList<>();
+        for (Trozo t : parseados) {
+            registros.addAll(t.registros);
+            errores.addAll(t.errores);
+        }
+        return new Resultado(registros, errores);
+    }
+
+    /**
+     * Parsea el archivo en paralelo con un Trozo nuevo por cada tramo y los
+     * devuelve en el orden del archivo. Las subclases de Trozo deciden qué
+     * hacer con cada línea (ver AlmacenFueraHeap).
+     */
+    <T extends Trozo> List<T> parsear(String rutaArchivo, Supplier<T> nuevoTrozo) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(rutaArchivo), StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            long inicioDatos = finDeLinea(canal, 0, tamano);
+            List<long[]> trozos = dividir(canal, inicioDatos, tamano);
+
+            return IntStream.range(0, trozos.size())
+                    .parallel()
+                    .mapToObj(i -> parsearTrozo(canal, trozos.get(i)[0], trozos.get(i)[1], nuevoTrozo.get()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // =========================================================
+    // DIVISIÓN EN TROZOS
+    // =========================================================
+
+    private static List<long[]> dividir(FileChannel canal, long desde, long tamano) throws IOException {
+        int hilos = Runtime.getRuntime().availableProcessors();
+        long objetivo = Math.max(TROZO_MIN, Math.min(TROZO_MAX, (tamano - desde) / (hilos * 4L) + 1));
+
+        List<long[]> trozos = new ArrayList<>();
+        long inicio = desde;
+        while (inicio < tamano) {
+            long fin = inicio + objetivo >= tamano ? tamano : siguienteSaltoN(canal, inicio + objetivo, tamano);
+            trozos.add(new long[]{inicio, fin});
+            inicio = fin;
+        }
+        return trozos;
+    }
+
+    // Posición siguiente al primer '\n' desde pos (o el final del archivo)
+    private static long siguienteSaltoN(FileChannel canal, long pos, long tamano) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while (pos < tamano) {
+            buf.clear();
+            int leidos = canal.read(buf, pos);
+            if (leidos <= 0) break;
+            for (int i = 0; i < leidos; i++) {
+                if (buf.get(i) == '\n') return pos + i + 1;
+            }
+            pos += leidos;
+        }
+        return tamano;
+    }
+
+    // Posición siguiente al terminador de la primera línea (\n, \r o \r\n), como readLine
+    private static long finDeLinea(FileChannel canal, long pos, long tamano) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while (pos < tamano) {
+            buf.clear();
+            int leidos = canal.read(buf, pos);
+            if (leidos <= 0) break;
+            for (int i = 0; i < leidos; i++) {
+                byte b = buf.get(i);
+                if (b == '\n') return pos + i + 1;
+                if (b == '\r') {
+                    long sig = pos + i + 1;
+                    if (sig < tamano) {
+                        ByteBuffer uno = ByteBuffer.allocate(1);
+                        if (canal.read(uno, sig) == 1 && uno.get(0) == '\n') sig++;
+                    }
+                    return sig;
+                }
+            }
+            pos += leidos;
+        }
+        return tamano;
+    }
+
+    // =========================================================
+    // PARSEO DE UN TROZO
+    // =========================================================
+
+    static class Trozo {
+        final List<Datos.Registro> registros = new ArrayList<>();
+        final List<String>         errores   = new ArrayList<>();
+
+        // Caché local de categóricos: bytes -> instancia internada
+        final List<byte[]> clavesCat  = new ArrayList<>();
+        final List<String> valoresCat = new ArrayList<>();
+
+        /**
+         * Línea válida ya parseada; posicion es su primer byte en el archivo.
+         * Por defecto se guarda como Registro.
+         */
+        void fila(long posicion, int age, String gender, String occupation, String deviceType,
+                  double dailyPhoneHours, double socialMediaHours, double workProductivityScore,
+                  double sleepHours, int stressLevel, int appUsageCount, double caffeineIntakeCups,
+                  double weekendScreenTimeHours) {
+            registros.add(new Datos.Registro(age, gender, occupation, deviceType, dailyPhoneHours,
+                    socialMediaHours, workProductivityScore, sleepHours, stressLevel, appUsageCount,
+                    caffeineIntakeCups, weekendScreenTimeHours));
+        }
+
+        /** Fin del trozo: todas sus líneas ya se entregaron. */
+        void terminar() { }
+    }
+
+    private <T extends Trozo> T parsearTrozo(FileChannel canal, long desde, long hasta, T trozo) {
+        MappedByteBuffer buf;
+        try {
+            buf = canal.map(FileChannel.MapMode.READ_ONLY, desde, hasta - desde);
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo mapear el archivo", e);
+        }
+
+        int limite = buf.limit();
+        int[] inicioCampo = new int[COLUMNAS + 1];
+        int[] finCampo    = new int[COLUMNAS + 1];
+
+        int pos = 0;
+        while (pos < limite) {
+            // Delimitar la línea [ini, fin) y saltar su terminador
+            int ini = pos, fin = pos;
+            while (fin < limite) {
+                byte b = buf.get(fin);
+                if (b == '\n' || b == '\r') break;
+                fin++;
+            }
+            pos = fin;
+            if (pos < limite && buf.get(pos) == '\r') pos++;
+            if (pos < limite && buf.get(pos) == '\n' && (pos == fin || buf.get(fin) == '\r')) pos++;
+
+            if (enBlanco(buf, ini, fin)) continue;
+
+            int columnas = campos(buf, ini, fin, inicioCampo, finCampo);
+            if (columnas < COLUMNAS) {
+                trozo.errores.add("Línea incompleta o mal formateada (columnas=" + columnas + "): "
+                        + texto(buf, ini, fin));
+                continue;
+            }
+
+            try {
+                // Ignoramos el campo 0 que es el User_ID
+                int    age    = parsearEntero(buf, inicioCampo[1], finCampo[1]);
+                String gender = categorico(trozo, buf, inicioCampo[2], finCampo[2]);
+                String occ    = categorico(trozo, buf, inicioCampo[3], finCampo[3]);
+                String device = categorico(trozo, buf, inicioCampo[4], finCampo[4]);
+                trozo.fila(desde + ini,
+                        age, gender, occ, device,
+                        parsearDecimal(buf, inicioCampo[5],  finCampo[5]),
+                        parsearDecimal(buf, inicioCampo[6],  finCampo[6]),
+                        parsearDecimal(buf, inicioCampo[7],  finCampo[7]),
+                        parsearDecimal(buf, inicioCampo[8],  finCampo[8]),
+                        parsearEntero(buf,  inicioCampo[9],  finCampo[9]),
+                        parsearEntero(buf,  inicioCampo[10], finCampo[10]),
+                        parsearDecimal(buf, inicioCampo[11], finCampo[11]),
+                        parsearDecimal(buf, inicioCampo[12], finCampo[12])
+                );
+            } catch (NumberFormatException e) {
+                trozo.errores.add("Error al parsear línea: " + texto(buf, ini, fin) + " - " + e.getMessage());
+            }
+        }
+        trozo.terminar();
+        return trozo;
+    }
+
+    /**
+     * Delimita los campos de la línea [ini, fin) como String.split(","): guarda
+     * los primeros inicioCampo.length y devuelve cuántos hay sin contar los
+     * vacíos del final.
+     */
+    static int campos(ByteBuffer buf, int ini, int fin, int[] inicioCampo, int[] finCampo) {
+        int columnas = 0, campoIni = ini, ultimoNoVacio = 0;
+        for (int p = ini; p <= fin; p++) {
+            if (p == fin || buf.get(p) == ',') {
+                if (columnas < inicioCampo.length) {
+                    inicioCampo[columnas] = campoIni;
+                    finCampo[columnas]    = p;
+                }
+                columnas++;
+                if (p > campoIni) ultimoNoVacio = columnas;
+                campoIni = p + 1;
+            }
+        }
+        return ultimoNoVacio;
+    }
+
+    // Igual que linea.trim().isEmpty()
+    static boolean enBlanco(ByteBuffer buf, int ini, int fin) {
+        for (int p = ini; p < fin; p++) {
+            if ((buf.get(p) & 0xff) > ' ') return false;
+        }
+        return true;
+    }
+
+    static String texto(ByteBuffer buf, int ini, int fin) {
+        byte[] bytes = new byte[fin - ini];
+        buf.get(ini, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String categorico(Trozo trozo, ByteBuffer buf, int ini, int fin) {
+        int largo = fin - ini;
+        for (int c = 0; c < trozo.clavesCat.size(); c++) {
+            byte[] clave = trozo.clavesCat.get(c);
+            if (clave.length != largo) continue;
+            int p = 0;
+            while (p < largo && clave[p] == buf.get(ini + p)) p++;
+            if (p == largo) return trozo.valoresCat.get(c);
+        }
+
+        byte[] clave = new byte[largo];
+        buf.get(ini, clave);
+        String valor = new String(clave, StandardCharsets.UTF_8);
+        String previo = internados.putIfAbsent(valor, valor);
+        if (previo != null) valor = previo;
+
+        trozo.clavesCat.add(clave);
+        trozo.valoresCat.add(valor);
+        return valor;
+    }
+
+    // =========================================================
+    // PARSEO NUMÉRICO DESDE BYTES
+    // =========================================================
+
+    /**
+     * Entero con signo opcional y hasta 9 dígitos; cualquier otro caso se
+     * delega en Integer.parseInt para conservar exactamente su comportamiento.
+     */
+    static int parsearEntero(ByteBuffer buf, int ini, int fin) {
+        int p = ini;
+        boolean negativo = false;
+        if (p < fin && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negativo = buf.get(p) == '-';
+            p++;
+        }
+        int digitos = fin - p;
+        if (digitos < 1 || digitos > 9) return Integer.parseInt(texto(buf, ini, fin));
+
+        int valor = 0;
+        for (; p < fin; p++) {
+            int d = buf.get(p) - '0';
+            if (d < 0 || d > 9) return Integer.parseInt(texto(buf, ini, fin));
+            valor = valor * 10 + d;
+        }
+        return negativo ? -valor : valor;
+    }
+
+    private static final double[] POTENCIAS_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Decimal simple (signo, dígitos, punto, dígitos) con hasta 15 dígitos
+     * significativos: mantisa y potencia de 10 son exactas en double, así que
+     * una sola división da el mismo resultado redondeado que Double.parseDouble.
+     * Exponentes, espacios, NaN, etc. se delegan en Double.parseDouble.
+     */
+    static double parsearDecimal(ByteBuffer buf, int ini, int fin) {
+        int p = ini;
+        boolean negativo = false;
+        if (p < fin && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negativo = buf.get(p) == '-';
+            p++;
+        }
+
+        long mantisa = 0;
+        int digitos = 0, decimales = 0;
+        boolean punto = false;
+        for (; p < fin; p++) {
+            byte b = buf.get(p);
+            if (b >= '0' && b <= '9') {
+                mantisa = mantisa * 10 + (b - '0');
+                digitos++;
+                if (punto) decimales++;
+            } else if (b == '.' && !punto) {
+                punto = true;
+            } else {
+                return Double.parseDouble(texto(buf, ini, fin));
+            }
+        }
+        if (digitos == 0 || digitos > 15 || decimales >= POTENCIAS_10.length) {
+            return Double.parseDouble(texto(buf, ini, fin));
+        }
+
+        double valor = mantisa / POTENCIAS_10[decimales];
+        return negativo ? -valor : valor;
+    }
+}
@@ -0,0 +1,363 @@
+package backend;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Entrenamiento compactado: las filas con el mismo vector normalizado se
+ * agrupan en un único representante con sus miembros (índice original y clase).
+ *
+ * La búsqueda recorre solo los representantes y vota con los miembros, en el
+ * mismo orden (distancia², índice original) que el modelo sin compactar: los
+ * grupos más cercanos entran completos y, en la distancia frontera, se toman
+ * los miembros de menor índice de todos los grupos empatados. Con tolerancia 0
+ * los vecinos y la predicción son idénticos a los del modelo original.
+ *
+ * Con tolerancia > 0 se agrupan además los vectores de una misma celda de la
+ * rejilla de ese lado (en unidades normalizadas) y el representante es su media:
+ * menos filas que recorrer a cambio de una predicción aproximada.
+ */
+public final class ConjuntoCompacto {
+
+    private final List<double[]> representantes; // características + clase mayoritaria
+    private final int[]  inicios;   // miembros del grupo g: miembros[inicios[g]..inicios[g + 1])
+    private final int[]  miembros;  // índices originales, crecientes dentro de cada grupo
+    private final byte[] claseDe;   // clase de cada fila original
+    private final int[]  grupoDe;   // grupo de cada fila original
+    private final int[]  conteos;   // [grupo * numClases + clase]
+    private final int    numClases;
+    private final int    dims;
+    private final double tolerancia;
+
+    ConjuntoCompacto(List<double[]> representantes, int[] inicios, int[] miembros, byte[] claseDe, double tolerancia) {
+        this.representantes = representantes;
+        this.inicios        = inicios;
+        this.miembros       = miembros;
+        this.claseDe        = claseDe;
+        this.tolerancia     = tolerancia;
+        this.dims           = representantes.isEmpty() ? 0 : representantes.get(0).length - 1;
+
+        int maxClase = 0;
+        for (byte c : claseDe) maxClase = Math.max(maxClase, c);
+        this.numClases = maxClase + 1;
+
+        int grupos = representantes.size();
+        this.grupoDe = new int[miembros.length];
+        this.conteos = new int[grupos * numClases];
+        for (int g = 0; g < grupos; g++) {
+            for (int m = inicios[g]; m < inicios[g + 1]; m++) {
+                grupoDe[miembros[m]] = g;
+                conteos[g * numClases + claseDe[miembros[m]]]++;
+            }
+        }
+    }
+
+    // =========================================================
+    // COMPACTACIÓN
+    // =========================================================
+
+    /**
+     * Agrupa las filas idénticas (tolerancia 0) o de la misma celda de la
+     * rejilla (tolerancia > 0). Los grupos quedan en el orden de su primera fila.
+     */
+    public static ConjuntoCompacto compactar(List<double[]> filas, double tolerancia) {
+        if (tolerancia < 0 || Double.isNaN(tolerancia)) {
+            throw new IllegalArgumentException("Tolerancia no válida: " + tolerancia);
+        }
+        int n = filas.size();
+        int dims = n == 0 ? 0 : filas.get(0).length - 1;
+
+        // 1. Grupo de cada fila según su clave
+        Map<Clave, Integer> grupoPorClave = new HashMap<>();
+        int[] grupoDe = new int[n];
+        byte[] claseDe = new byte[n];
+        for (int i = 0; i < n; i++) {
+            double[] fila = filas.get(i);
+            long[] clave = new long[dims];
+            for (int j = 0; j < dims; j++) {
+                clave[j] = tolerancia == 0 ? Double.doubleToLongBits(fila[j]) : (long) Math.floor(fila[j] / tolerancia);
+            }
+            Integer g = grupoPorClave.putIfAbsent(new Clave(clave), grupoPorClave.size());
+            grupoDe[i] = g == null ? grupoPorClave.size() - 1 : g;
+            claseDe[i] = (byte) fila[dims];
+        }
+
+        // 2. Miembros de cada grupo en orden de índice original
+        int grupos = grupoPorClave.size();
+        int[] inicios = new int[grupos + 1];
+        for (int g : grupoDe) inicios[g + 1]++;
+        for (int g = 0; g < grupos; g++) inicios[g + 1] += inicios[g];
+        int[] miembros = new int[n];
+        int[] siguiente = Arrays.copyOf(inicios, grupos);
+        for (int i = 0; i < n; i++) miembros[siguiente[grupoDe[i]]++] = i;
+
+        // 3. Representante: el vector común o, en la rejilla, la media de la celda
+        int numClases = 0;
+        for (byte c : claseDe) numClases = Math.max(numClases, c + 1);
+        List<double[]> representantes = new ArrayList<>(grupos);
+        for (int g = 0; g < grupos; g++) {
+            double[] rep = new double[dims + 1];
+            int[] votos = new int[numClases];
+            for (int m = inicios[g]; m < inicios[g + 1]; m++) {
+                double[] fila = filas.get(miembros[m]);
+                if (tolerancia == 0) {
+                    if (m == inicios[g]) System.arraycopy(fila, 0, rep, 0, dims);
+                } else {
+                    for (int j = 0; j < dims; j++) rep[j] += fila[j];
+                }
+                votos[claseDe[miembros[m]]]++;
+            }
+            if (tolerancia > 0) {
+                int tam = inicios[g + 1] - inicios[g];
+                for (int j = 0; j < dims; j++) rep[j] /= tam;
+            }
+            rep[dims] = MotorKNN.ganadora(votos);
+            representantes.add(rep);
+        }
+        return new ConjuntoCompacto(representantes, inicios, miembros, claseDe, tolerancia);
+    }
+
+    private static final class Clave {
+        private final long[] valores;
+        private final int    hash;
+
+        Clave(long[] valores) {
+            this.valores = valores;
+            this.hash    = Arrays.hashCode(valores);
+        }
+
+        @Override public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Clave && Arrays.equals(valores, ((Clave) o).valores);
+        }
+    }
+
+    // =========================================================
+    // ACCESO
+    // =========================================================
+
+    public int            grupos()          { return representantes.size(); }
+    public int            filasOriginales() { return miembros.length; }
+    public double         tolerancia()      { return tolerancia; }
+    public List<double[]> representantes()  { return representantes; }
+    int[]                 inicios()         { return inicios; }
+    int[]                 miembros()        { return miembros; }
+    byte[]                claseDe()         { return claseDe; }
+
+    /**
+     * Vista de solo lectura de las filas originales: la fila i es el
+     * representante de su grupo con la clase de i (con tolerancia 0, la fila exacta).
+     */
+    public List<double[]> filas() {
+        return new Filas();
+    }
+
+    private class Filas extends AbstractList<double[]> implements RandomAccess {
+        @Override
+        public double[] get(int i) {
+            double[] fila = representantes.get(grupoDe[i]).clone();
+            fila[dims] = claseDe[i];
+            return fila;
+        }
+
+        @Override
+        public int size() { return miembros.length; }
+
+        ConjuntoCompacto conjunto() { return ConjuntoCompacto.this; }
+    }
+
+    // Devuelve el conjunto detrás de una lista obtenida con filas(), o null
+    static ConjuntoCompacto origen(List<double[]> lista) {
+        return lista instanceof Filas ? ((Filas) lista).conjunto() : null;
+    }
+
+    /** Búsqueda ponderada sobre los representantes, buscados con el modo indicado. */
+    public BuscadorKNN buscador(String modo) {
+        return new Buscador(ModeloKNN.crearBuscador(representantes, modo));
+    }
+
+    public String resumen() {
+        int maxGrupo = 0;
+        for (int g = 0; g < grupos(); g++) maxGrupo = Math.max(maxGrupo, inicios[g + 1] - inicios[g]);
+        return String.format("Compactación (tolerancia %s): %d filas -> %d grupos (%.1f%% menos, grupo máx %d)",
+                tolerancia == 0 ? "exacta" : String.valueOf(tolerancia), filasOriginales(), grupos(),
+                100.0 * (filasOriginales() - grupos()) / Math.max(filasOriginales(), 1), maxGrupo);
+    }
+
+    // =========================================================
+    // BÚSQUEDA PONDERADA
+    // =========================================================
+
+    private final class Buscador implements BuscadorKNN {
+        private final BuscadorKNN base;
+        private final ThreadLocal<Trabajo> trabajo = ThreadLocal.withInitial(Trabajo::new);
+
+        Buscador(BuscadorKNN base) {
+            this.base = base;
+        }
+
+        @Override public int tamano() { return miembros.length; }
+        @Override public int dims()   { return dims; }
+
+        /**
+         * Grupos más cercanos que cubren k filas, incluidos todos los que empatan
+         * en la distancia del último. Si la búsqueda pudo cortar ese empate se
+         * repite con más grupos. Devuelve cuántos hay en t.grupos/t.distancias.
+         */
+        private int seleccionar(double[] consulta, int k, Trabajo t) {
+            // Un grupo de más para ver si el siguiente empata con la frontera
+            int total = grupos();
+            int kk = (int) Math.min(total, k + 1L);
+            while (true) {
+                t.asegurar(kk);
+                int tam = base.vecinos(consulta, kk, t.grupos, t.distancias);
+                int j = 0, cubiertas = 0;
+                while (j < tam && cubiertas < k) cubiertas += tamGrupo(t.grupos[j++]);
+                while (j < tam && t.distancias[j] == t.distancias[j - 1]) j++;
+                // Completo si algún grupo devuelto quedó más lejos o ya están todos
+                if (j < tam || kk == total) return j;
+                kk = (int) Math.min(total, 2L * kk);
+            }
+        }
+
+        @Override
+        public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+            if (grupos() == 0 || k <= 0) return 0;
+            Trabajo t = trabajo.get();
+            int sel = seleccionar(consulta, k, t);
+
+            // Por niveles de igual distancia; dentro de cada nivel, por índice original
+            int escritos = 0;
+            for (int p = 0; p < sel && escritos < k; ) {
+                int q = finNivel(t, p, sel);
+                int tam = juntarMiembros(t, p, q);
+                for (int m = 0; m < tam && escritos < k; m++) {
+                    indices[escritos] = t.miembros[m];
+                    if (distancias != null) distancias[escritos] = t.distancias[p];
+                    escritos++;
+                }
+                p = q;
+            }
+            return escritos;
+        }
+
+        @Override
+        public int predecir(double[] consulta, int k) {
+            if (grupos() == 0 || k <= 0) return -1;
+            Trabajo t = trabajo.get();
+            int sel = seleccionar(consulta, k, t);
+            int[] votos = t.votos(numClases);
+
+            // Los grupos anteriores a la distancia frontera entran completos
+            int falta = k, p = 0;
+            double frontera = t.distancias[sel - 1];
+            for (; p < sel && t.distancias[p] < frontera; p++) {
+                int g = t.grupos[p];
+                for (int c = 0; c < numClases; c++) votos[c] += conteos[g * numClases + c];
+                falta -= tamGrupo(g);
+            }
+
+            // En la frontera, los miembros de menor índice original
+            if (p == sel - 1) {
+                int g = t.grupos[p];
+                for (int m = inicios[g]; m < inicios[g + 1] && falta > 0; m++, falta--) votos[claseDe[miembros[m]]]++;
+            } else {
+                int tam = juntarMiembros(t, p, sel);
+                for (int m = 0; m < tam && falta > 0; m++, falta--) votos[claseDe[t.miembros[m]]]++;
+            }
+            return MotorKNN.ganadora(votos);
+        }
+
+        private int tamGrupo(int g) {
+            return inicios[g + 1] - inicios[g];
+        }
+
+        private int finNivel(Trabajo t, int p, int sel) {
+            int q = p + 1;
+            while (q < sel && t.distancias[q] == t.distancias[p]) q++;
+            return q;
+        }
+
+        // Miembros de los grupos t.grupos[p..q) en t.miembros, ordenados por índice original
+        private int juntarMiembros(Trabajo t, int p, int q) {
+            int tam = 0;
+            for (int j = p; j < q; j++) tam += tamGrupo(t.grupos[j]);
+            if (t.miembros.length < tam) t.miembros = new int[Math.max(tam, 2 * t.miembros.length)];
+            int o = 0;
+            for (int j = p; j < q; j++) {
+                int g = t.grupos[j];
+                System.arraycopy(miembros, inicios[g], t.miembros, o, tamGrupo(g));
+                o += tamGrupo(g);
+            }
+            if (q - p > 1) Arrays.sort(t.miembros, 0, tam);
+            return tam;
+        }
+    }
+
+    // Buffers reutilizables para no asignar memoria por consulta
+    private static final class Trabajo {
+        int[]    grupos     = new int[0];
+        double[] distancias = new double[0];
+        int[]    miembros   = new int[64];
+        private int[] votos = new int[0];
+
+        void asegurar(int k) {
+            if (grupos.length < k) {
+                grupos     = new int[k];
+                distancias = new double[k];
+            }
+        }
+
+        int[] votos(int numClases) {
+            if (votos.length != numClases) votos = new int[numClases];
+            else Arrays.fill(votos, 0);
+            return votos;
+        }
+    }
+
+    // =========================================================
+    // INFORME
+    // =========================================================
+
+    /**
+     * Compara la búsqueda sin compactar con la compactada sobre testSet:
+     * reducción de filas, predicciones distintas, precisión y aceleración.
+     */
+    public static void informar(BuscadorKNN original, ConjuntoCompacto compacto, BuscadorKNN compactado,
+                                List<double[]> testSet, int k) {
+        double[][] consultas = testSet.toArray(new double[0][]);
+        int[] antes   = new int[consultas.length];
+        int[] despues = new int[consultas.length];
+
+        // Una pasada de calentamiento y otra medida para cada búsqueda
+        original.predecirVarios(consultas, 0, Math.min(consultas.length, 500), k, antes);
+        compactado.predecirVarios(consultas, 0, Math.min(consultas.length, 500), k, despues);
+        long t0 = System.nanoTime();
+        original.predecirVarios(consultas, 0, consultas.length, k, antes);
+        long t1 = System.nanoTime();
+        compactado.predecirVarios(consultas, 0, consultas.length, k, despues);
+        long t2 = System.nanoTime();
+
+        int distintas = 0, aciertosAntes = 0, aciertosDespues = 0;
+        for (int q = 0; q < consultas.length; q++) {
+            int real = (int) consultas[q][consultas[q].length - 1];
+            if (antes[q] != despues[q]) distintas++;
+            if (antes[q] == real) aciertosAntes++;
+            if (despues[q] == real) aciertosDespues++;
+        }
+        double n = Math.max(consultas.length, 1);
+
+        System.out.println(compacto.resumen());
+        System.out.printf("Predicciones distintas: %d de %d%n", distintas, consultas.length);
+        System.out.printf("Precisión: %.2f%% -> %.2f%%%n", 100.0 * aciertosAntes / n, 100.0 * aciertosDespues / n);
+        System.out.printf("Aceleración de predicción: %.2fx (%.0f -> %.0f predicciones/s)%n",
+                (double) (t1 - t0) / Math.max(t2 - t1, 1), n * 1e9 / Math.max(t1 - t0, 1), n * 1e9 / Math.max(t2 - t1, 1));
+    }
+}
@@ -0,0 +1,390 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda KNN repartida entre varios procesos (scatter-gather).
+ *
+ * El entrenamiento se divide en N fragmentos contiguos; cada uno se guarda como
+ * .knnm y lo atiende un proceso NodoFragmento en un socket de loopback. Cada
+ * consulta (o lote) se envía a todos los fragmentos, cada uno devuelve sus k
+ * vecinos locales y aquí se mezclan por (distancia², índice global), donde el
+ * índice global es el inicio del fragmento más el índice local. Es el mismo
+ * orden que usa un solo nodo, así que los k vecinos y el voto (MotorKNN.ganadora)
+ * son idénticos a los de la predicción local.
+ *
+ * Implementa BuscadorKNN: predecirVarios envía el lote entero a cada fragmento
+ * de una vez. Las llamadas se serializan (una conexión por fragmento); para más
+ * rendimiento, lotes más grandes. Los procesos heredan las opciones de esta JVM.
+ *
+ * Cada lectura de un fragmento espera como mucho -Dknn.fragmentos.esperaMs
+ * (30 s por defecto). Tras cualquier fallo a mitad de un lote los flujos ya no
+ * están sincronizados con los nodos: el coordinador se cierra y las llamadas
+ * siguientes fallan con IllegalStateException en lugar de leer respuestas ajenas.
+ */
+public class CoordinadorFragmentos implements BuscadorKNN, AutoCloseable {
+
+    /** Espera máxima por defecto de cada lectura de un fragmento, en milisegundos. */
+    public static final int ESPERA_MS = 30_000;
+
+    private final Process[]          procesos;
+    private final Socket[]           sockets;
+    private final DataInputStream[]  entradas;
+    private final DataOutputStream[] salidas;
+    private final int[]              inicios; // primera fila global de cada fragmento
+    private final int                tamano;
+    private final int                dims;
+    private final int                numClases;
+    private final Path               directorio;
+    private boolean                  cerrado;  // por close() o por un fallo de comunicación
+
+    // Conteo de votos por hilo (se vota fuera del monitor)
+    private final ThreadLocal<MotorKNN.Trabajo> trabajo = ThreadLocal.withInitial(MotorKNN.Trabajo::new);
+
+    private CoordinadorFragmentos(int fragmentos, int tamano, int dims, int numClases, Path directorio) {
+        this.procesos   = new Process[fragmentos];
+        this.sockets    = new Socket[fragmentos];
+        this.entradas   = new DataInputStream[fragmentos];
+        this.salidas    = new DataOutputStream[fragmentos];
+        this.inicios    = new int[fragmentos + 1];
+        this.tamano     = tamano;
+        this.dims       = dims;
+        this.numClases  = numClases;
+        this.directorio = directorio;
+    }
+
+    /**
+     * Guarda los fragmentos de filas, arranca un NodoFragmento por fragmento
+     * con el modo de búsqueda indicado y se conecta a todos.
+     */
+    public static CoordinadorFragmentos lanzar(Preprocesamiento p, List<double[]> filas, int fragmentos,
+                                               String modoBusqueda) throws IOException {
+        if (fragmentos < 1 || fragmentos > filas.size()) {
+            throw new IllegalArgumentException("Número de fragmentos no válido: " + fragmentos + " (filas=" + filas.size() + ")");
+        }
+        int numClases = 0;
+        for (double[] fila : filas) numClases = Math.max(numClases, (int) fila[fila.length - 1] + 1);
+
+        Path directorio = Files.createTempDirectory("knn-fragmentos");
+        CoordinadorFragmentos c = new CoordinadorFragmentos(fragmentos, filas.size(),
+                filas.get(0).length - 1, numClases, directorio);
+        try {
+            for (int f = 0; f <= fragmentos; f++) c.inicios[f] = (int) ((long) filas.size() * f / fragmentos);
+
+            // Primero arrancar todos (cargan en paralelo) y después conectarse
+            for (int f = 0; f < fragmentos; f++) {
+                String ruta = directorio.resolve("fragmento-" + f + ".knnm").toString();
+                ModeloBinario.escribir(ruta, filas.subList(c.inicios[f], c.inicios[f + 1]), p.rangos(),
+                        p.genderMap(), p.occupationMap(), p.deviceMap());
+                c.procesos[f] = arrancar(ruta, modoBusqueda);
+            }
+            for (int f = 0; f < fragmentos; f++) {
+                int puerto = leerPuerto(c.procesos[f]);
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), puerto);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(Integer.getInteger("knn.fragmentos.esperaMs", ESPERA_MS));
+                c.sockets[f]  = socket;
+                c.entradas[f] = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                c.salidas[f]  = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                // El nodo ya mapeó su fragmento: el archivo se puede borrar
+                Files.deleteIfExists(directorio.resolve("fragmento-" + f + ".knnm"));
+            }
+            return c;
+        } catch (IOException | RuntimeException e) {
+            c.close();
+            throw e;
+        }
+    }
+
+    private static Process arrancar(String ruta, String modoBusqueda) throws IOException {
+        List<String> comando = new ArrayList<>();
+        comando.add(ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"));
+        comando.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        comando.add("-Dknn.busqueda=" + modoBusqueda);
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(NodoFragmento.class.getName());
+        comando.add(ruta);
+        return new ProcessBuilder(comando).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    // Primera línea "PUERTO n" de la salida del nodo (lo demás se ignora)
+    private static int leerPuerto(Process proceso) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(proceso.getInputStream(), StandardCharsets.UTF_8));
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            if (linea.startsWith("PUERTO ")) return Integer.parseInt(linea.substring(7).trim());
+        }
+        throw new IOException("El nodo terminó sin abrir su puerto (código " + esperar(proceso) + ")");
+    }
+
+    private static int esperar(Process proceso) {
+        try {
+            return proceso.waitFor(5, TimeUnit.SECONDS) ? proceso.exitValue() : -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    public int fragmentos() { return procesos.length; }
+
+    @Override public int tamano() { return tamano; }
+    @Override public int dims()   { return dims; }
+
+    // =========================================================
+    // SCATTER-GATHER
+    // =========================================================
+
+    // Vecinos globales de un lote: [consulta][j], del más cercano al más lejano
+    private static class Vecinos {
+        final int[]      tam;
+        final int[][]    indices;
+        final double[][] distancias;
+        final int[][]    clases;
+
+        Vecinos(int n, int k) {
+            tam        = new int[n];
+            indices    = new int[n][k];
+            distancias = new double[n][k];
+            clases     = new int[n][k];
+        }
+    }
+
+    /** Envía consultas[desde..hasta) a todos los fragmentos y mezcla sus k vecinos locales. */
+    private synchronized Vecinos dispersarYReunir(double[][] consultas, int desde, int hasta, int k) {
+        if (cerrado) throw new IllegalStateException("Coordinador de fragmentos cerrado");
+        int n = hasta - desde;
+        int fragmentos = procesos.length;
+        boolean completo = false;
+        try {
+            // Dispersar: el lote completo a cada fragmento antes de leer ninguna respuesta
+            for (DataOutputStream out : salidas) {
+                out.writeInt(k);
+                out.writeInt(n);
+                out.writeInt(consultas[desde].length);
+                for (int q = desde; q < hasta; q++) {
+                    for (double v : consultas[q]) out.writeDouble(v);
+                }
+                out.flush();
+            }
+
+            // Reunir: los fragmentos responden en el orden de las consultas
+            int[][]      tam  = new int[fragmentos][n];
+            int[][][]    idx  = new int[fragmentos][n][];
+            double[][][] dist = new double[fragmentos][n][];
+            int[][][]    cls  = new int[fragmentos][n][];
+            for (int f = 0; f < fragmentos; f++) {
+                DataInputStream in = entradas[f];
+                for (int q = 0; q < n; q++) {
+                    int t = in.readInt();
+                    if (t < 0 || t > k) throw new IOException("Respuesta no válida del fragmento " + f + ": " + t + " vecinos");
+                    tam[f][q]  = t;
+                    idx[f][q]  = new int[t];
+                    dist[f][q] = new double[t];
+                    cls[f][q]  = new int[t];
+                    for (int j = 0; j < t; j++) {
+                        dist[f][q][j] = in.readDouble();
+                        idx[f][q][j]  = inicios[f] + in.readInt();
+                        cls[f][q][j]  = in.readInt();
+                    }
+                }
+            }
+
+            // Mezclar: cada lista ya viene ordenada por (distancia², índice global)
+            Vecinos v = new Vecinos(n, k);
+            int[] pos = new int[fragmentos];
+            for (int q = 0; q < n; q++) {
+                Arrays.fill(pos, 0);
+                int j = 0;
+                for (; j < k; j++) {
+                    int mejor = -1;
+                    for (int f = 0; f < fragmentos; f++) {
+                        if (pos[f] >= tam[f][q]) continue;
+                        if (mejor < 0 || menor(dist[f][q][pos[f]], idx[f][q][pos[f]],
+                                               dist[mejor][q][pos[mejor]], idx[mejor][q][pos[mejor]])) {
+                            mejor = f;
+                        }
+                    }
+                    if (mejor < 0) break;
+                    v.distancias[q][j] = dist[mejor][q][pos[mejor]];
+                    v.indices[q][j]    = idx[mejor][q][pos[mejor]];
+                    v.clases[q][j]     = cls[mejor][q][pos[mejor]];
+                    pos[mejor]++;
+                }
+                v.tam[q] = j;
+            }
+            completo = true;
+            return v;
+        } catch (IOException e) {
+            // Incluye SocketTimeoutException: un nodo colgado no bloquea para siempre
+            throw new IllegalStateException("Error de comunicación con los fragmentos", e);
+        } finally {
+            // Quedan mensajes a medias en algún flujo: no se puede reutilizar ninguno
+            if (!completo) close();
+        }
+    }
+
+    private static boolean menor(double d1, int i1, double d2, int i2) {
+        return d1 < d2 || (d1 == d2 && i1 < i2);
+    }
+
+    // Mismo voto que la búsqueda local, sobre las clases ya mezcladas
+    private int votar(int[] clases, int tam) {
+        int[] votos = trabajo.get().votos(numClases);
+        Arrays.fill(votos, 0);
+        for (int j = 0; j < tam; j++) votos[clases[j]]++;
+        return MotorKNN.ganadora(votos);
+    }
+
+    @Override
+    public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+        Vecinos v = dispersarYReunir(new double[][]{consulta}, 0, 1, k);
+        System.arraycopy(v.indices[0], 0, indices, 0, v.tam[0]);
+        if (distancias != null) System.arraycopy(v.distancias[0], 0, distancias, 0, v.tam[0]);
+        return v.tam[0];
+    }
+
+    @Override
+    public int predecir(double[] consulta, int k) {
+        Vecinos v = dispersarYReunir(new double[][]{consulta}, 0, 1, k);
+        return votar(v.clases[0], v.tam[0]);
+    }
+
+    // Un lote es un solo viaje de ida y vuelta a cada fragmento
+    @Override
+    public boolean prediceEnLote() { return true; }
+
+    @Override
+    public void predecirVarios(double[][] consultas, int desde, int hasta, int k, int[] salida) {
+        if (hasta <= desde) return;
+        Vecinos v = dispersarYReunir(consultas, desde, hasta, k);
+        for (int q = desde; q < hasta; q++) salida[q] = votar(v.clases[q - desde], v.tam[q - desde]);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (cerrado) return;
+        cerrado = true;
+        for (Socket s : sockets) {
+            if (s == null) continue;
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Ya cerrado
+            }
+        }
+        for (Process p : procesos) {
+            if (p == null) continue;
+            try {
+                p.getOutputStream().close(); // el nodo termina al cerrarse su entrada
+            } catch (IOException e) {
+                // Ya terminado
+            }
+            if (esperar(p) < 0) p.destroyForcibly();
+        }
+        try (var archivos = Files.list(directorio)) {
+            for (Path a : (Iterable<Path>) archivos::iterator) Files.deleteIfExists(a);
+            Files.deleteIfExists(directorio);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // =========================================================
+    // INFORME DE ESCALADO
+    // =========================================================
+
+    /**
+     * Compara la predicción distribuida con la local y mide cómo escalan la
+     * latencia de una consulta y el rendimiento por lotes con 1, 2, 4... fragmentos:
+     *   java backend.CoordinadorFragmentos [csv] [max fragmentos] [consultas] [k]
+     */
+    public static void main(String[] args) throws IOException {
+        String ruta         = args.length > 0 ? args[0] : "backend/Stress level classification.csv";
+        int maxFragmentos   = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int numConsultas    = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int k               = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+        String modo         = System.getProperty("knn.busqueda", "kd");
+        int lote            = Integer.getInteger("knn.fragmentos.lote", 256);
+
+        Datos datos = new Datos();
+        datos.cargarDatosMapeado(ruta);
+        if (datos.getRegistros().isEmpty()) return;
+        Preprocesamiento p = Preprocesamiento.ajustar(datos.getRegistros());
+        List<double[]> filas = new ArrayList<>(datos.getRegistros().size());
+        for (Datos.Registro r : datos.getRegistros()) filas.add(p.vectorizar(r));
+        Collections.shuffle(filas, new Random(42));
+
+        int corte = (int) (filas.size() * 0.8);
+        List<double[]> entrenamiento = filas.subList(0, corte);
+        double[][] consultas = filas.subList(corte, Math.min(filas.size(), corte + numConsultas)).toArray(new double[0][]);
+
+        // Referencia local con el mismo modo de búsqueda
+        BuscadorKNN local = ModeloKNN.crearBuscador(entrenamiento, modo);
+        int[] esperadas = new int[consultas.length];
+        for (int q = 0; q < consultas.length; q++) esperadas[q] = local.predecir(consultas[q], k);
+
+        System.out.printf("Búsqueda distribuida: %d filas de entrenamiento, %d consultas, k=%d, modo %s, lotes de %d%n",
+                entrenamiento.size(), consultas.length, k, modo, lote);
+        System.out.printf("%11s %12s %12s %12s %14s %10s%n",
+                "Fragmentos", "Arranque ms", "p50 µs", "p99 µs", "Lote cons/s", "Distintas");
+        imprimirFila("local", 0, local, consultas, esperadas, k, lote);
+
+        for (int n = 1; n <= maxFragmentos; n *= 2) {
+            long inicio = System.nanoTime();
+            try (CoordinadorFragmentos c = lanzar(p, entrenamiento, n, modo)) {
+                long arranque = System.nanoTime() - inicio;
+                imprimirFila(String.valueOf(n), arranque, c, consultas, esperadas, k, lote);
+            }
+        }
+    }
+
+    private static void imprimirFila(String nombre, long arranque, BuscadorKNN buscador,
+                                     double[][] consultas, int[] esperadas, int k, int lote) {
+        // Latencia de consultas sueltas (tras un calentamiento)
+        int sueltas = Math.min(consultas.length, 500);
+        for (int q = 0; q < Math.min(sueltas, 100); q++) buscador.predecir(consultas[q], k);
+        long[] latencias = new long[sueltas];
+        for (int q = 0; q < sueltas; q++) {
+            long t0 = System.nanoTime();
+            buscador.predecir(consultas[q], k);
+            latencias[q] = System.nanoTime() - t0;
+        }
+        Arrays.sort(latencias);
+
+        // Rendimiento por lotes y comparación con la referencia local
+        int[] obtenidas = new int[consultas.length];
+        long t0 = System.nanoTime();
+        for (int d = 0; d < consultas.length; d += lote) {
+            buscador.predecirVarios(consultas, d, Math.min(consultas.length, d + lote), k, obtenidas);
+        }
+        long duracion = System.nanoTime() - t0;
+        int distintas = 0;
+        for (int q = 0; q < consultas.length; q++) if (obtenidas[q] != esperadas[q]) distintas++;
+
+        System.out.printf("%11s %12.0f %12.0f %12.0f %14.0f %10d%n", nombre, arranque / 1e6,
+                latencias[sueltas / 2] / 1e3, latencias[(int) (sueltas * 0.99)] / 1e3,
+                consultas.length * 1e9 / duracion, distintas);
+    }
+}
@@ -68,6 +68,7 @@ public class Datos {
                 // Asegurar que tenemos suficientes columnas
                 if (datos.length < 13) {
                      System.err.println("Línea incompleta o mal formateada (columnas=" + datos.length + "): " + linea);
+                     Metricas.lineasDescartadas(1);
                      continue;
                 }
 
@@ -90,6 +91,7 @@ public class Datos {
                     registros.add(registro);
                 } catch (NumberFormatException e) {
                     System.err.println("Error al parsear línea: " + linea + " - " + e.getMessage());
+                    Metricas.lineasDescartadas(1);
                 }
             }
             System.out.println("Datos cargados exitosamente: " + registros.size() + " registros.");
@@ -98,6 +100,24 @@ public class Datos {
         }
     }
 
+    /**
+     * Igual que cargarDatos pero con el archivo mapeado en memoria y parseado
+     * en paralelo (ver CargadorCSV). Mismas reglas para líneas mal formadas.
+     */
+    public void cargarDatosMapeado(String rutaArchivo) {
+        try {
+            CargadorCSV.Resultado resultado = new CargadorCSV().cargar(rutaArchivo);
+            for (String error : resultado.errores) {
+                System.err.println(error);
+            }
+            Metricas.lineasDescartadas(resultado.errores.size());
+            registros.addAll(resultado.registros);
+            System.out.println("Datos cargados exitosamente: " + registros.size() + " registros.");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     public List<Registro> getRegistros() {
         return registros;
     }
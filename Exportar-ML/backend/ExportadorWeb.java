@@ -0,0 +1,297 @@
+package backend;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exportación del modelo para el frontend (GitHub Pages) escribiendo en flujo,
+ * sin String.format ni un documento completo en memoria.
+ *
+ *   exportarJSON      mismo esquema que antes: ranges, mappings y trainSet
+ *                     como arreglo de arreglos con 4 decimales.
+ *   exportarCompacto  ranges y mappings igual, pero las características se
+ *                     cuantizan a uint8 o uint16 (v * (2^bits - 1), redondeado)
+ *                     y van en un bloque base64 fila a fila, más otro bloque
+ *                     uint8 con las clases. script.js lo decodifica a typed arrays.
+ *                     Es con pérdida: la página solo lo usa con ?modelo=compacto.
+ *
+ * Un modelo compactado (ver ConjuntoCompacto) exporta sus representantes como
+ * filas y añade los grupos: groupStarts (inicio de cada grupo en memberIndex,
+ * más el final), memberIndex (índice original de cada miembro) y memberLabels
+ * (su clase). En el JSON clásico son arreglos; en el compacto, base64 de
+ * uint32/uint8 little-endian. script.js vota entonces con los miembros.
+ */
+public class ExportadorWeb {
+
+    private static final String[] NOMBRES_RANGOS = {
+        "Age", "Phone", "Social", "Prod", "Sleep", "App", "Caff", "Screen"
+    };
+
+    // =========================================================
+    // JSON CLÁSICO
+    // =========================================================
+
+    public static void exportarJSON(String ruta, List<double[]> trainSet, double[] rangos,
+                                    Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                                    Map<String, Integer> deviceMap) throws IOException {
+        exportarJSON(ruta, trainSet, rangos, genderMap, occupationMap, deviceMap, null);
+    }
+
+    public static void exportarJSON(String ruta, List<double[]> trainSet, double[] rangos,
+                                    Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                                    Map<String, Integer> deviceMap, ConjuntoCompacto compacto) throws IOException {
+        if (compacto != null) trainSet = compacto.representantes();
+        try (Salida out = new Salida(new FileOutputStream(ruta))) {
+            out.texto("{\n");
+            cabecera(out, rangos, genderMap, occupationMap, deviceMap);
+
+            out.texto("  \"trainSet\": [\n");
+            int filas = trainSet.size();
+            for (int i = 0; i < filas; i++) {
+                double[] vec = trainSet.get(i);
+                out.texto("    [");
+                for (int j = 0; j < vec.length; j++) {
+                    out.decimal(vec[j], 4);
+                    if (j < vec.length - 1) out.texto(", ");
+                }
+                out.texto("]");
+                if (i < filas - 1) out.texto(",\n");
+            }
+            out.texto(compacto != null ? "\n  ],\n" : "\n  ]\n");
+            if (compacto != null) {
+                out.texto("  \"groupStarts\": ");  arreglo(out, compacto.inicios());  out.texto(",\n");
+                out.texto("  \"memberIndex\": ");  arreglo(out, compacto.miembros()); out.texto(",\n");
+                out.texto("  \"memberLabels\": ");
+                byte[] clases = compacto.claseDe();
+                int[] miembros = compacto.miembros();
+                out.texto("[");
+                for (int m = 0; m < miembros.length; m++) {
+                    if (m > 0) out.texto(", ");
+                    out.entero(clases[miembros[m]]);
+                }
+                out.texto("]\n");
+            }
+            out.texto("}");
+        }
+    }
+
+    // =========================================================
+    // JSON COMPACTO (CUANTIZADO)
+    // =========================================================
+
+    public static void exportarCompacto(String ruta, List<double[]> trainSet, double[] rangos,
+                                        Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                                        Map<String, Integer> deviceMap, int bits) throws IOException {
+        exportarCompacto(ruta, trainSet, rangos, genderMap, occupationMap, deviceMap, bits, null);
+    }
+
+    public static void exportarCompacto(String ruta, List<double[]> trainSet, double[] rangos,
+                                        Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                                        Map<String, Integer> deviceMap, int bits,
+                                        ConjuntoCompacto compacto) throws IOException {
+        if (compacto != null) trainSet = compacto.representantes();
+        if (bits != 8 && bits != 16) throw new IllegalArgumentException("bits debe ser 8 o 16: " + bits);
+
+        int filas = trainSet.size();
+        int dims  = filas == 0 ? 0 : trainSet.get(0).length - 1;
+        int niveles = (1 << bits) - 1;
+
+        try (Salida out = new Salida(new FileOutputStream(ruta))) {
+            out.texto("{\n");
+            cabecera(out, rangos, genderMap, occupationMap, deviceMap);
+
+            out.texto("  \"format\": \"knn-q").entero(bits).texto("\",\n");
+            out.texto("  \"rows\": ").entero(filas).texto(",\n");
+            out.texto("  \"dims\": ").entero(dims).texto(",\n");
+            out.texto("  \"levels\": ").entero(niveles).texto(",\n");
+
+            // Características cuantizadas, little-endian, fila a fila
+            out.texto("  \"features\": \"");
+            try (OutputStream b64 = Base64.getEncoder().wrap(out.sinCerrar())) {
+                byte[] fila = new byte[dims * (bits / 8)];
+                for (double[] vec : trainSet) {
+                    for (int j = 0; j < dims; j++) {
+                        int q = cuantizar(vec[j], niveles);
+                        if (bits == 8) {
+                            fila[j] = (byte) q;
+                        } else {
+                            fila[2 * j]     = (byte) q;
+                            fila[2 * j + 1] = (byte) (q >>> 8);
+                        }
+                    }
+                    b64.write(fila);
+                }
+            }
+            out.texto("\",\n");
+
+            out.texto("  \"labels\": \"");
+            try (OutputStream b64 = Base64.getEncoder().wrap(out.sinCerrar())) {
+                for (double[] vec : trainSet) b64.write((int) vec[dims]);
+            }
+            out.texto(compacto != null ? "\",\n" : "\"\n");
+
+            if (compacto != null) {
+                out.texto("  \"groupStarts\": \"");
+                enteros32(out, compacto.inicios());
+                out.texto("\",\n");
+                out.texto("  \"memberIndex\": \"");
+                enteros32(out, compacto.miembros());
+                out.texto("\",\n");
+                out.texto("  \"memberLabels\": \"");
+                try (OutputStream b64 = Base64.getEncoder().wrap(out.sinCerrar())) {
+                    byte[] clases = compacto.claseDe();
+                    for (int m : compacto.miembros()) b64.write(clases[m]);
+                }
+                out.texto("\"\n");
+            }
+            out.texto("}");
+        }
+    }
+
+    // Enteros uint32 little-endian en base64
+    private static void enteros32(Salida out, int[] valores) throws IOException {
+        try (OutputStream b64 = Base64.getEncoder().wrap(out.sinCerrar())) {
+            byte[] b = new byte[4];
+            for (int v : valores) {
+                b[0] = (byte) v;
+                b[1] = (byte) (v >>> 8);
+                b[2] = (byte) (v >>> 16);
+                b[3] = (byte) (v >>> 24);
+                b64.write(b);
+            }
+        }
+    }
+
+    static int cuantizar(double v, int niveles) {
+        double escalado = v * niveles;
+        if (escalado <= 0) return 0;
+        if (escalado >= niveles) return niveles;
+        return (int) (escalado + 0.5);
+    }
+
+    // =========================================================
+    // PARTES COMUNES
+    // =========================================================
+
+    private static void cabecera(Salida out, double[] rangos, Map<String, Integer> genderMap,
+                                 Map<String, Integer> occupationMap, Map<String, Integer> deviceMap) throws IOException {
+        // 1. Rangos
+        out.texto("  \"ranges\": {\n");
+        for (int i = 0; i < NOMBRES_RANGOS.length; i++) {
+            String nombre = NOMBRES_RANGOS[i];
+            out.texto("    \"min").texto(nombre).texto("\": ").decimal(rangos[2 * i], 2);
+            out.texto(", \"max").texto(nombre).texto("\": ").decimal(rangos[2 * i + 1], 2);
+            out.texto(i < NOMBRES_RANGOS.length - 1 ? ",\n" : "\n");
+        }
+        out.texto("  },\n");
+
+        // 2. Mappings (Nombre -> Valor, como los usa el JS)
+        out.texto("  \"genderMap\": ");     mapa(out, genderMap);     out.texto(",\n");
+        out.texto("  \"occupationMap\": "); mapa(out, occupationMap); out.texto(",\n");
+        out.texto("  \"deviceMap\": ");     mapa(out, deviceMap);     out.texto(",\n");
+    }
+
+    private static void arreglo(Salida out, int[] valores) throws IOException {
+        out.texto("[");
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) out.texto(", ");
+            out.entero(valores[i]);
+        }
+        out.texto("]");
+    }
+
+    private static void mapa(Salida out, Map<String, Integer> mapa) throws IOException {
+        out.texto("{");
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : mapa.entrySet()) {
+            out.texto("\"").texto(entry.getKey()).texto("\": ").entero(entry.getValue());
+            if (++count < mapa.size()) out.texto(", ");
+        }
+        out.texto("}");
+    }
+
+    /**
+     * Flujo de bytes con escritura directa de números: decimales con punto fijo
+     * y el mismo redondeo que String.format(Locale.US, "%.Nf"), sin pasar por él.
+     */
+    static class Salida implements AutoCloseable {
+        private final BufferedOutputStream out;
+        private final byte[] digitos = new byte[24];
+
+        Salida(OutputStream destino) {
+            this.out = new BufferedOutputStream(destino, 1 << 16);
+        }
+
+        Salida texto(String s) throws IOException {
+            int largo = s.length();
+            boolean ascii = true;
+            for (int i = 0; i < largo && ascii; i++) ascii = s.charAt(i) < 0x80;
+            if (ascii) {
+                for (int i = 0; i < largo; i++) out.write(s.charAt(i));
+            } else {
+                out.write(s.getBytes(StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+
+        Salida entero(long v) throws IOException {
+            if (v < 0) { out.write('-'); v = -v; }
+            int pos = digitos.length;
+            do {
+                digitos[--pos] = (byte) ('0' + (v % 10));
+                v /= 10;
+            } while (v > 0);
+            out.write(digitos, pos, digitos.length - pos);
+            return this;
+        }
+
+        Salida decimal(double v, int decimales) throws IOException {
+            if (Double.isNaN(v) || Double.isInfinite(v) || Math.abs(v) >= 1e15) {
+                return texto(Double.toString(v));
+            }
+            long escala = 1;
+            for (int i = 0; i < decimales; i++) escala *= 10;
+
+            double x = Math.abs(v) * escala;
+            long q = (long) Math.floor(x + 0.5);
+            if (Math.abs(x - Math.floor(x) - 0.5) < 1e-6) {
+                // Casi a mitad de camino: redondear sobre los dígitos decimales
+                // más cortos del double, como hace Formatter con %.Nf
+                q = new BigDecimal(Double.toString(Math.abs(v)))
+                        .setScale(decimales, RoundingMode.HALF_UP).unscaledValue().longValue();
+            }
+            if (Double.doubleToRawLongBits(v) < 0) out.write('-'); // Formatter conserva el signo aun en -0.0000
+            entero(q / escala);
+            if (decimales > 0) {
+                out.write('.');
+                long frac = q % escala;
+                for (long d = escala / 10; d > 0; d /= 10) {
+                    out.write((int) ('0' + (frac / d) % 10));
+                }
+            }
+            return this;
+        }
+
+        // Vista del flujo que no se cierra con el codificador base64
+        OutputStream sinCerrar() {
+            return new OutputStream() {
+                @Override public void write(int b) throws IOException { out.write(b); }
+                @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+                @Override public void close() throws IOException { }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package backend;
+
+/**
+ * Max-heap acotado de (distancia², índice) para quedarse con los k vecinos más cercanos.
+ *
+ * El orden es lexicográfico (distancia, índice): a igual distancia se conserva
+ * la fila de menor índice, igual que la ordenación estable del KNN original.
+ * Se reutiliza entre consultas para no asignar memoria en la ruta caliente.
+ */
+class HeapVecinos {
+
+    double[] dist = new double[0];
+    int[]    idx  = new int[0];
+    int      tam;
+    int      capacidad;
+
+    void reiniciar(int k) {
+        if (dist.length < k) {
+            dist = new double[k];
+            idx  = new int[k];
+        }
+        capacidad = k;
+        tam = 0;
+    }
+
+    boolean lleno() { return tam == capacidad; }
+
+    // Distancia del peor vecino retenido (solo válida si el heap está lleno)
+    double peorDistancia() { return dist[0]; }
+
+    void ofrecer(double d, int i) {
+        if (tam < capacidad) {
+            // Insertar y subir
+            int pos = tam++;
+            while (pos > 0) {
+                int padre = (pos - 1) >>> 1;
+                if (!peor(d, i, dist[padre], idx[padre])) break;
+                dist[pos] = dist[padre];
+                idx[pos]  = idx[padre];
+                pos = padre;
+            }
+            dist[pos] = d;
+            idx[pos]  = i;
+        } else if (peor(dist[0], idx[0], d, i)) {
+            // Reemplazar la raíz (el peor de los k) y bajar
+            bajar(d, i, tam);
+        }
+    }
+
+    private void bajar(double d, int i, int limite) {
+        int pos = 0;
+        while (true) {
+            int hijo = 2 * pos + 1;
+            if (hijo >= limite) break;
+            int der = hijo + 1;
+            if (der < limite && peor(dist[der], idx[der], dist[hijo], idx[hijo])) hijo = der;
+            if (!peor(dist[hijo], idx[hijo], d, i)) break;
+            dist[pos] = dist[hijo];
+            idx[pos]  = idx[hijo];
+            pos = hijo;
+        }
+        dist[pos] = d;
+        idx[pos]  = i;
+    }
+
+    /**
+     * Vacía el heap escribiendo los vecinos de más cercano a más lejano.
+     * Devuelve cuántos se escribieron.
+     */
+    int extraerOrdenados(int[] indices, double[] distancias) {
+        int total = tam;
+        for (int pos = total - 1; pos >= 0; pos--) {
+            indices[pos] = idx[0];
+            if (distancias != null) distancias[pos] = dist[0];
+            int ultimo = --tam;
+            if (ultimo > 0) bajar(dist[ultimo], idx[ultimo], ultimo);
+        }
+        return total;
+    }
+
+    // (d1, i1) está más lejos que (d2, i2) en el orden (distancia, índice)
+    static boolean peor(double d1, int i1, double d2, int i2) {
+        return d1 > d2 || (d1 == d2 && i1 > i2);
+    }
+}
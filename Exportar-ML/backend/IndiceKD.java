@@ -0,0 +1,220 @@
+package backend;
+
+import java.util.Arrays;
+
+/**
+ * Árbol KD para búsqueda exacta de vecinos sobre el conjunto de entrenamiento.
+ *
+ * Se construye una sola vez a partir de un MotorKNN (mediana sobre la dimensión
+ * de mayor rango, hojas de hasta TAM_HOJA filas). Cada nodo guarda su caja
+ * envolvente; una rama se descarta solo si la distancia mínima a su caja es
+ * estrictamente mayor que el peor vecino retenido, así que los empates se
+ * siguen resolviendo por índice de fila y el resultado coincide con la fuerza bruta.
+ */
+public class IndiceKD implements BuscadorKNN {
+
+    private static final int TAM_HOJA = 16;
+
+    private final int      dims;
+    private final int      n;
+    private final int[]    etiquetas;   // indexadas por fila original
+    private final int      numClases;
+
+    // Filas reordenadas según el árbol (contiguas por hoja) y su índice original
+    private final double[] puntos;
+    private final int[]    orden;
+
+    // Nodos en arreglos paralelos; hoja si izq == -1
+    private int[]    inicio, fin, izq, der;
+    private double[] cajaMin, cajaMax;
+    private int      numNodos;
+
+    private final ThreadLocal<MotorKNN.Trabajo> trabajo = ThreadLocal.withInitial(MotorKNN.Trabajo::new);
+
+    public IndiceKD(MotorKNN motor) {
+        this.dims      = motor.dims();
+        this.n         = motor.tamano();
+        this.etiquetas = motor.etiquetas();
+        this.numClases = motor.numClases();
+
+        double[] origen = motor.caracteristicas();
+        this.orden = new int[n];
+        for (int i = 0; i < n; i++) orden[i] = i;
+
+        int maxNodos = Math.max(1, 2 * (n / TAM_HOJA + 1));
+        inicio  = new int[maxNodos];
+        fin     = new int[maxNodos];
+        izq     = new int[maxNodos];
+        der     = new int[maxNodos];
+        cajaMin = new double[maxNodos * dims];
+        cajaMax = new double[maxNodos * dims];
+
+        if (n > 0) construir(origen, 0, n);
+
+        // Copiar las filas en el orden del árbol para recorrer las hojas de forma contigua
+        this.puntos = new double[n * dims];
+        for (int p = 0; p < n; p++) {
+            System.arraycopy(origen, orden[p] * dims, puntos, p * dims, dims);
+        }
+    }
+
+    @Override public int tamano() { return n; }
+    @Override public int dims()   { return dims; }
+
+    // Estructura del árbol para guardarla junto al modelo (ver ModeloBinario)
+    int      numNodos() { return numNodos; }
+    int[]    orden()    { return orden; }
+    int[]    inicio()   { return inicio; }
+    int[]    fin()      { return fin; }
+    int[]    izq()      { return izq; }
+    int[]    der()      { return der; }
+    double[] cajaMin()  { return cajaMin; }
+    double[] cajaMax()  { return cajaMax; }
+
+    // =========================================================
+    // CONSTRUCCIÓN
+    // =========================================================
+
+    private int construir(double[] datos, int desde, int hasta) {
+        int nodo = numNodos++;
+        asegurarNodos(numNodos);
+        inicio[nodo] = desde;
+        fin[nodo]    = hasta;
+
+        // Caja envolvente del nodo
+        int baseCaja = nodo * dims;
+        for (int j = 0; j < dims; j++) {
+            cajaMin[baseCaja + j] = Double.POSITIVE_INFINITY;
+            cajaMax[baseCaja + j] = Double.NEGATIVE_INFINITY;
+        }
+        for (int p = desde; p < hasta; p++) {
+            int base = orden[p] * dims;
+            for (int j = 0; j < dims; j++) {
+                double v = datos[base + j];
+                if (v < cajaMin[baseCaja + j]) cajaMin[baseCaja + j] = v;
+                if (v > cajaMax[baseCaja + j]) cajaMax[baseCaja + j] = v;
+            }
+        }
+
+        // Dimensión de mayor rango
+        int dimCorte = 0;
+        double rango = -1;
+        for (int j = 0; j < dims; j++) {
+            double r = cajaMax[baseCaja + j] - cajaMin[baseCaja + j];
+            if (r > rango) { rango = r; dimCorte = j; }
+        }
+
+        if (hasta - desde <= TAM_HOJA || rango <= 0) {
+            izq[nodo] = der[nodo] = -1;
+            return nodo;
+        }
+
+        int medio = (desde + hasta) >>> 1;
+        seleccionarMediana(datos, desde, hasta - 1, medio, dimCorte);
+
+        int hijoIzq = construir(datos, desde, medio);
+        int hijoDer = construir(datos, medio, hasta);
+        izq[nodo] = hijoIzq;
+        der[nodo] = hijoDer;
+        return nodo;
+    }
+
+    // Quickselect sobre orden[lo..hi] por la coordenada dim, dejando el k-ésimo en su lugar
+    private void seleccionarMediana(double[] datos, int lo, int hi, int k, int dim) {
+        while (hi > lo) {
+            double pivote = datos[orden[(lo + hi) >>> 1] * dims + dim];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (datos[orden[i] * dims + dim] < pivote) i++;
+                while (datos[orden[j] * dims + dim] > pivote) j--;
+                if (i <= j) {
+                    int tmp = orden[i]; orden[i] = orden[j]; orden[j] = tmp;
+                    i++; j--;
+                }
+            }
+            if (k <= j)      hi = j;
+            else if (k >= i) lo = i;
+            else             return;
+        }
+    }
+
+    private void asegurarNodos(int requeridos) {
+        if (requeridos <= inicio.length) return;
+        int cap = Math.max(requeridos, inicio.length * 2);
+        inicio  = Arrays.copyOf(inicio, cap);
+        fin     = Arrays.copyOf(fin, cap);
+        izq     = Arrays.copyOf(izq, cap);
+        der     = Arrays.copyOf(der, cap);
+        cajaMin = Arrays.copyOf(cajaMin, cap * dims);
+        cajaMax = Arrays.copyOf(cajaMax, cap * dims);
+    }
+
+    // =========================================================
+    // BÚSQUEDA
+    // =========================================================
+
+    @Override
+    public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+        if (n == 0 || k <= 0) return 0;
+        HeapVecinos heap = trabajo.get().heap;
+        heap.reiniciar(Math.min(k, n));
+        buscar(0, consulta, heap);
+        return heap.extraerOrdenados(indices, distancias);
+    }
+
+    @Override
+    public int predecir(double[] consulta, int k) {
+        if (n == 0 || k <= 0) return -1;
+
+        MotorKNN.Trabajo t = trabajo.get();
+        long t0 = Metricas.inicio();
+        t.heap.reiniciar(Math.min(k, n));
+        int recorridas = buscar(0, consulta, t.heap);
+        long t1 = Metricas.busqueda(t0, recorridas);
+        int clase = MotorKNN.votar(etiquetas, t.heap.idx, t.heap.tam, t.votos(numClases));
+        Metricas.latencia(Metricas.VOTACION, t1);
+        return clase;
+    }
+
+    // Devuelve cuántas filas se compararon (las de las hojas visitadas)
+    private int buscar(int nodo, double[] consulta, HeapVecinos heap) {
+        if (izq[nodo] < 0) {
+            for (int p = inicio[nodo], base = p * dims; p < fin[nodo]; p++, base += dims) {
+                double sum = 0.0;
+                for (int j = 0; j < dims; j++) {
+                    double diff = consulta[j] - puntos[base + j];
+                    sum += diff * diff;
+                }
+                heap.ofrecer(sum, orden[p]);
+            }
+            return fin[nodo] - inicio[nodo];
+        }
+
+        int a = izq[nodo], b = der[nodo];
+        double cotaA = distanciaCaja(a, consulta);
+        double cotaB = distanciaCaja(b, consulta);
+        if (cotaB < cotaA) {
+            int tmp = a; a = b; b = tmp;
+            double tmpCota = cotaA; cotaA = cotaB; cotaB = tmpCota;
+        }
+
+        int recorridas = 0;
+        if (!heap.lleno() || cotaA <= heap.peorDistancia()) recorridas += buscar(a, consulta, heap);
+        if (!heap.lleno() || cotaB <= heap.peorDistancia()) recorridas += buscar(b, consulta, heap);
+        return recorridas;
+    }
+
+    // Cota inferior de la distancia² entre la consulta y cualquier punto de la caja
+    private double distanciaCaja(int nodo, double[] consulta) {
+        int baseCaja = nodo * dims;
+        double sum = 0.0;
+        for (int j = 0; j < dims; j++) {
+            double q = consulta[j], diff;
+            if      (q < cajaMin[baseCaja + j]) diff = cajaMin[baseCaja + j] - q;
+            else if (q > cajaMax[baseCaja + j]) diff = q - cajaMax[baseCaja + j];
+            else continue;
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
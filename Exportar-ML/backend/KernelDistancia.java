@@ -0,0 +1,118 @@
+package backend;
+
+/**
+ * Núcleo de distancias de una consulta contra bloques de filas de entrenamiento.
+ *
+ * Las filas se agrupan en bloques de "ancho" filas (el número de carriles del
+ * vector SIMD) y dentro de cada bloque se guardan por columna: para cada
+ * dimensión j hay "ancho" valores contiguos. Así una carga vectorial trae la
+ * misma dimensión de varias filas y cada carril acumula su propia distancia².
+ * El último bloque se rellena hasta el ancho del vector.
+ *
+ * La versión vectorial (backend.simd.KernelVectorial, jdk.incubator.vector) se
+ * carga por reflexión; si el módulo no está disponible se usa la versión escalar,
+ * que produce exactamente los mismos valores en doble precisión.
+ *
+ * Compilar y ejecutar con el módulo incubado:
+ *   javac --add-modules jdk.incubator.vector backend/*.java backend/simd/*.java
+ *   java  --add-modules jdk.incubator.vector backend.Modelo
+ */
+public abstract class KernelDistancia {
+
+    protected final int n;
+    protected final int dims;
+    protected final int ancho;
+    protected final int numBloques;
+
+    // Solo uno de los dos está en uso según la precisión elegida
+    protected final double[] datosD;
+    protected final float[]  datosF;
+
+    protected KernelDistancia(double[] plano, int n, int dims, int ancho, boolean float32) {
+        this.n          = n;
+        this.dims       = dims;
+        this.ancho      = ancho;
+        this.numBloques = (n + ancho - 1) / ancho;
+
+        int tamBloque = dims * ancho;
+        this.datosD = float32 ? null : new double[numBloques * tamBloque];
+        this.datosF = float32 ? new float[numBloques * tamBloque] : null;
+
+        for (int i = 0; i < n; i++) {
+            int base = (i / ancho) * tamBloque + (i % ancho);
+            for (int j = 0; j < dims; j++) {
+                double v = plano[i * dims + j];
+                if (float32) datosF[base + j * ancho] = (float) v;
+                else         datosD[base + j * ancho] = v;
+            }
+        }
+    }
+
+    public int numBloques() { return numBloques; }
+    public int ancho()      { return ancho; }
+    public boolean float32() { return datosF != null; }
+
+    public abstract boolean vectorial();
+
+    /** Escribe en salida[0..ancho) la distancia² de la consulta a cada fila del bloque. */
+    public abstract void distancias(double[] consulta, int bloque, double[] salida);
+
+    /**
+     * Crea el núcleo vectorial si jdk.incubator.vector está disponible y no se
+     * ha desactivado con -Dknn.simd=false; en otro caso, el escalar.
+     */
+    public static KernelDistancia crear(double[] plano, int n, int dims, boolean float32) {
+        if (!"false".equals(System.getProperty("knn.simd"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                Class<?> clase = Class.forName("backend.simd.KernelVectorial");
+                return (KernelDistancia) clase
+                        .getConstructor(double[].class, int.class, int.class, boolean.class)
+                        .newInstance(plano, n, dims, float32);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Clase no compilada o módulo no resoluble: seguimos con la versión escalar
+            }
+        }
+        return new Escalar(plano, n, dims, 4, float32);
+    }
+
+    public static KernelDistancia crearEscalar(double[] plano, int n, int dims, boolean float32) {
+        return new Escalar(plano, n, dims, 4, float32);
+    }
+
+    // Misma disposición en bloques, recorrida carril a carril
+    static final class Escalar extends KernelDistancia {
+
+        Escalar(double[] plano, int n, int dims, int ancho, boolean float32) {
+            super(plano, n, dims, ancho, float32);
+        }
+
+        @Override public boolean vectorial() { return false; }
+
+        @Override
+        public void distancias(double[] consulta, int bloque, double[] salida) {
+            int base = bloque * dims * ancho;
+
+            // Cada carril suma las dimensiones en el mismo orden que la versión vectorial
+            if (datosD != null) {
+                for (int c = 0; c < ancho; c++) {
+                    double sum = 0.0;
+                    for (int j = 0, col = base + c; j < dims; j++, col += ancho) {
+                        double diff = consulta[j] - datosD[col];
+                        sum += diff * diff;
+                    }
+                    salida[c] = sum;
+                }
+            } else {
+                for (int c = 0; c < ancho; c++) {
+                    float sum = 0.0f;
+                    for (int j = 0, col = base + c; j < dims; j++, col += ancho) {
+                        float diff = (float) consulta[j] - datosF[col];
+                        sum += diff * diff;
+                    }
+                    salida[c] = sum;
+                }
+            }
+        }
+    }
+}
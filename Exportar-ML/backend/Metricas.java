@@ -0,0 +1,297 @@
+package backend;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Métricas ligeras del pipeline y de la predicción.
+ *
+ *   etapas       duración de cada etapa del entrenamiento (carga, normalizacion,
+ *                particion, evaluacion, guardado, exportacion)
+ *   histogramas  latencia de predictKNN, predecirNuevoUsuario, peticiones HTTP
+ *                y, dentro de cada búsqueda, selección de vecinos vs. votación
+ *   contadores   filas recorridas, líneas descartadas del CSV y valores
+ *                categóricos desconocidos que pasaron a código 0
+ *
+ * Desactivadas por defecto: cada punto de medición se reduce a leer un
+ * booleano. Se activan con -Dknn.metricas=true (o por JMX) y entonces se
+ * registran como MXBeans bajo "backend:type=..." y se vuelcan a la salida
+ * cada -Dknn.metricas.intervalo segundos (60 por defecto; 0 = nunca).
+ */
+public final class Metricas {
+
+    private static volatile boolean activas;
+
+    public static final Histograma PREDICT_KNN   = new Histograma("predictKNN");
+    public static final Histograma NUEVO_USUARIO = new Histograma("predecirNuevoUsuario");
+    public static final Histograma PETICION_HTTP = new Histograma("peticionHTTP");
+    public static final Histograma BUSQUEDA      = new Histograma("busqueda");
+    public static final Histograma VOTACION      = new Histograma("votacion");
+
+    private static final Histograma[] HISTOGRAMAS = {PREDICT_KNN, NUEVO_USUARIO, PETICION_HTTP, BUSQUEDA, VOTACION};
+
+    private static final LongAdder filasRecorridas       = new LongAdder();
+    private static final LongAdder lineasDescartadas     = new LongAdder();
+    private static final LongAdder categoriasDesconocidas = new LongAdder();
+
+    // Última duración y acumulado por etapa, en el orden en que se registran
+    private static final Map<String, long[]> etapas = new LinkedHashMap<>();
+
+    private static boolean configuradas;
+    private static ScheduledExecutorService volcado;
+
+    private Metricas() { }
+
+    /** Lee -Dknn.metricas y -Dknn.metricas.intervalo; solo tiene efecto la primera vez. */
+    public static synchronized void configurar() {
+        if (configuradas) return;
+        configuradas = true;
+        if (!Boolean.getBoolean("knn.metricas")) return;
+
+        activar(true);
+        registrarJMX();
+        long intervalo = Long.getLong("knn.metricas.intervalo", 60L);
+        if (intervalo > 0) {
+            volcado = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "knn-metricas");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            volcado.scheduleAtFixedRate(() -> System.out.print(resumen()), intervalo, intervalo, TimeUnit.SECONDS);
+        }
+    }
+
+    public static void activar(boolean valor) { activas = valor; }
+
+    public static boolean activas() { return activas; }
+
+    // =========================================================
+    // PUNTOS DE MEDICIÓN
+    // =========================================================
+
+    /** Marca de tiempo para medir, o 0 si las métricas están desactivadas. */
+    static long inicio() {
+        return activas ? System.nanoTime() : 0L;
+    }
+
+    /** Registra la duración de una etapa desde "desde" y devuelve el inicio de la siguiente. */
+    static long etapa(String nombre, long desde) {
+        if (desde == 0L) return inicio();
+        long ahora = System.nanoTime();
+        synchronized (etapas) {
+            long[] e = etapas.computeIfAbsent(nombre, x -> new long[3]);
+            e[0] = ahora - desde;  // última
+            e[1] += ahora - desde; // total
+            e[2]++;                // ejecuciones
+        }
+        return ahora;
+    }
+
+    /** Registra una latencia desde "desde" (si se midió) y devuelve el instante actual. */
+    static long latencia(Histograma h, long desde) {
+        if (desde == 0L) return 0L;
+        long ahora = System.nanoTime();
+        h.registrar(ahora - desde);
+        return ahora;
+    }
+
+    /** Fin de la selección de vecinos de una consulta: latencia y filas comparadas. */
+    static long busqueda(long desde, long filas) {
+        if (desde == 0L) return 0L;
+        filasRecorridas.add(filas);
+        return latencia(BUSQUEDA, desde);
+    }
+
+    static void filasRecorridas(long filas) {
+        if (activas) filasRecorridas.add(filas);
+    }
+
+    static void lineasDescartadas(long lineas) {
+        if (activas) lineasDescartadas.add(lineas);
+    }
+
+    static void categoriaDesconocida() {
+        if (activas) categoriasDesconocidas.increment();
+    }
+
+    // =========================================================
+    // CONSULTA
+    // =========================================================
+
+    public static long filasRecorridas()        { return filasRecorridas.sum(); }
+    public static long lineasDescartadas()      { return lineasDescartadas.sum(); }
+    public static long categoriasDesconocidas() { return categoriasDesconocidas.sum(); }
+
+    /** Última duración de cada etapa, en milisegundos. */
+    public static Map<String, Double> etapasMs() {
+        Map<String, Double> copia = new LinkedHashMap<>();
+        synchronized (etapas) {
+            for (Map.Entry<String, long[]> e : etapas.entrySet()) copia.put(e.getKey(), e.getValue()[0] / 1e6);
+        }
+        return copia;
+    }
+
+    public static void reiniciar() {
+        filasRecorridas.reset();
+        lineasDescartadas.reset();
+        categoriasDesconocidas.reset();
+        synchronized (etapas) {
+            etapas.clear();
+        }
+        for (Histograma h : HISTOGRAMAS) h.reiniciar();
+    }
+
+    public static String resumen() {
+        StringBuilder sb = new StringBuilder();
+        List<String> partes = new ArrayList<>();
+        synchronized (etapas) {
+            for (Map.Entry<String, long[]> e : etapas.entrySet()) {
+                long[] v = e.getValue();
+                partes.add(String.format("%s=%.1f ms%s", e.getKey(), v[0] / 1e6,
+                        v[2] > 1 ? String.format(" (x%d, total %.1f ms)", v[2], v[1] / 1e6) : ""));
+            }
+        }
+        if (!partes.isEmpty()) sb.append("[métricas] etapas: ").append(String.join(", ", partes)).append('\n');
+        sb.append(String.format("[métricas] filas recorridas=%d, líneas descartadas=%d, categorías desconocidas=%d%n",
+                filasRecorridas(), lineasDescartadas(), categoriasDesconocidas()));
+        for (Histograma h : HISTOGRAMAS) {
+            if (h.getCuenta() == 0) continue;
+            sb.append(String.format("[métricas] %s: n=%d media=%.1f µs p50=%.1f µs p90=%.1f µs p99=%.1f µs máx=%.1f µs%n",
+                    h.nombre, h.getCuenta(), h.getMediaMicros(), h.getP50Micros(), h.getP90Micros(),
+                    h.getP99Micros(), h.getMaxMicros()));
+        }
+        return sb.toString();
+    }
+
+    // =========================================================
+    // JMX
+    // =========================================================
+
+    public interface MetricasMXBean {
+        boolean isActivas();
+        void setActivas(boolean activas);
+        long getFilasRecorridas();
+        long getLineasDescartadas();
+        long getCategoriasDesconocidas();
+        Map<String, Double> getEtapasMs();
+        void reiniciar();
+    }
+
+    public interface HistogramaMXBean {
+        long getCuenta();
+        double getMediaMicros();
+        double getP50Micros();
+        double getP90Micros();
+        double getP99Micros();
+        double getMaxMicros();
+        void reiniciar();
+    }
+
+    private static final class Vista implements MetricasMXBean {
+        @Override public boolean isActivas()                 { return activas; }
+        @Override public void setActivas(boolean valor)      { activar(valor); }
+        @Override public long getFilasRecorridas()           { return filasRecorridas(); }
+        @Override public long getLineasDescartadas()         { return lineasDescartadas(); }
+        @Override public long getCategoriasDesconocidas()    { return categoriasDesconocidas(); }
+        @Override public Map<String, Double> getEtapasMs()   { return etapasMs(); }
+        @Override public void reiniciar()                    { Metricas.reiniciar(); }
+    }
+
+    private static void registrarJMX() {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nombre = new ObjectName("backend:type=Metricas");
+            if (!servidor.isRegistered(nombre)) servidor.registerMBean(new Vista(), nombre);
+            for (Histograma h : HISTOGRAMAS) {
+                ObjectName nh = new ObjectName("backend:type=Latencia,name=" + h.nombre);
+                if (!servidor.isRegistered(nh)) servidor.registerMBean(h, nh);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // =========================================================
+    // HISTOGRAMA
+    // =========================================================
+
+    /**
+     * Histograma logarítmico de latencias en nanosegundos: cada potencia de 2
+     * se divide en 4 cubetas, así que los percentiles tienen un error relativo
+     * de como mucho 12.5%. Sin bloqueos; registrar cuesta unas pocas operaciones atómicas.
+     */
+    public static final class Histograma implements HistogramaMXBean {
+        private static final int CUBETAS = 256;
+
+        final String nombre;
+        private final AtomicLongArray cuentas = new AtomicLongArray(CUBETAS);
+        private final LongAdder  total = new LongAdder();
+        private final LongAdder  suma  = new LongAdder();
+        private final AtomicLong max   = new AtomicLong();
+
+        Histograma(String nombre) { this.nombre = nombre; }
+
+        void registrar(long nanos) {
+            if (nanos < 0) nanos = 0;
+            cuentas.incrementAndGet(cubeta(nanos));
+            total.increment();
+            suma.add(nanos);
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { }
+        }
+
+        static int cubeta(long nanos) {
+            if (nanos < 4) return (int) nanos;
+            int exp = 63 - Long.numberOfLeadingZeros(nanos);
+            return 4 * (exp - 1) + (int) ((nanos >>> (exp - 2)) & 3);
+        }
+
+        // Punto medio de la cubeta, en nanosegundos
+        static double centro(int cubeta) {
+            if (cubeta < 4) return cubeta;
+            int exp = cubeta / 4 + 1;
+            long ancho = 1L << (exp - 2);
+            long inferior = (4L + cubeta % 4) * ancho;
+            return inferior + ancho / 2.0;
+        }
+
+        public double percentilMicros(double p) {
+            long n = total.sum();
+            if (n == 0) return 0.0;
+            long objetivo = Math.max(1, (long) Math.ceil(p * n));
+            long acumulado = 0;
+            for (int c = 0; c < CUBETAS; c++) {
+                acumulado += cuentas.get(c);
+                if (acumulado >= objetivo) return Math.min(centro(c), max.get()) / 1e3;
+            }
+            return max.get() / 1e3;
+        }
+
+        @Override public long   getCuenta()      { return total.sum(); }
+        @Override public double getMediaMicros() { long n = total.sum(); return n == 0 ? 0.0 : suma.sum() / 1e3 / n; }
+        @Override public double getP50Micros()   { return percentilMicros(0.50); }
+        @Override public double getP90Micros()   { return percentilMicros(0.90); }
+        @Override public double getP99Micros()   { return percentilMicros(0.99); }
+        @Override public double getMaxMicros()   { return max.get() / 1e3; }
+
+        @Override
+        public void reiniciar() {
+            for (int c = 0; c < CUBETAS; c++) cuentas.set(c, 0);
+            total.reset();
+            suma.reset();
+            max.set(0);
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package backend;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
 
 public class Modelo {
 
@@ -19,26 +21,13 @@ public class Modelo {
     // ESTADO DEL MODELO (necesario para predecir nuevos casos)
     // =========================================================
 
-    // Mappings de variables categóricas (se construyen durante normalización)
-    private static Map<String, Integer> genderMap     = new HashMap<>();
-    private static Map<String, Integer> occupationMap = new HashMap<>();
-    private static Map<String, Integer> deviceMap     = new HashMap<>();
+    // Modelo activo: instantánea inmutable publicada de forma atómica (ver ModeloKNN)
+    private static final ServicioInferencia servicio = new ServicioInferencia();
 
-    // Rangos min/max de variables numéricas (se guardan para normalizar nuevos datos)
-    private static double minAge, maxAge;
-    private static double minPhone, maxPhone;
-    private static double minSocial, maxSocial;
-    private static double minProd, maxProd;
-    private static double minSleep, maxSleep;
-    private static double minApp, maxApp;
-    private static double minCaff, maxCaff;
-    private static double minScreen, maxScreen;
+    // Normalización de la última llamada a normalizarDatos (base del modelo que se entrena)
+    private static volatile Preprocesamiento preprocesamiento;
 
-    // El conjunto de entrenamiento que se usa para predecir
-    private static List<double[]> trainSetGlobal = new ArrayList<>();
-
-    // Etiquetas legibles para las 3 clases
-    private static final String[] CLASE_NOMBRE = {"Bajo (Relax)", "Medio (Alerta)", "Alto (Peligro/Burnout)"};
+    public static ServicioInferencia servicio() { return servicio; }
 
     // =========================================================
     // MAIN - Punto de entrada
@@ -47,109 +36,284 @@ public class Modelo {
     public static void main(String[] args) {
         String rutaArchivo = "backend/Stress level classification.csv";
 
-        // 1. Cargar datos
-        Datos datosManager = new Datos();
-        datosManager.cargarDatos(rutaArchivo);
-        List<Datos.Registro> registros = datosManager.getRegistros();
-
-        if (registros.isEmpty()) {
-            return;
-        }
+        // Métricas opcionales (-Dknn.metricas=true): duración de cada etapa, latencias y contadores
+        Metricas.configurar();
+        long etapa = Metricas.inicio();
+
+        ModeloKNN modelo;
+        List<double[]> testSet;
+        if (Boolean.getBoolean("knn.fueraHeap")) {
+            // 1-3. Cargar, normalizar y separar la prueba fuera del heap (-Dknn.fueraHeap=true)
+            AlmacenFueraHeap.Particion particion = cargarFueraHeap(rutaArchivo);
+            etapa = Metricas.etapa("carga", etapa);
+            if (particion == null) {
+                return;
+            }
+            modelo  = new ModeloKNN(particion.preprocesamiento, particion.entrenamiento.filas(), modoBusqueda);
+            testSet = particion.prueba.filas();
+        } else {
+            // 1. Cargar datos
+            Datos datosManager = new Datos();
+            datosManager.cargarDatosMapeado(rutaArchivo);
+            List<Datos.Registro> registros = datosManager.getRegistros();
+            etapa = Metricas.etapa("carga", etapa);
+
+            if (registros.isEmpty()) {
+                return;
+            }
 
-        // 2. Normalizar y dividir datos (Silencioso)
-        List<double[]> datosNormalizados = normalizarDatos(registros);
+            // 2. Normalizar y dividir datos (Silencioso)
+            List<double[]> datosNormalizados = normalizarDatos(registros);
+            etapa = Metricas.etapa("normalizacion", etapa);
 
-        // 3. Barajar y dividir 80/20
-        Collections.shuffle(datosNormalizados);
+            // 3. Barajar y dividir 80/20
+            Collections.shuffle(datosNormalizados);
 
-        int total     = datosNormalizados.size();
-        int trainSize = (int) (total * 0.8);
+            int total     = datosNormalizados.size();
+            int trainSize = (int) (total * 0.8);
 
-        trainSetGlobal = new ArrayList<>(datosNormalizados.subList(0, trainSize));
-        List<double[]> testSet = new ArrayList<>(datosNormalizados.subList(trainSize, total));
+            // El modelo se publica con el índice ya construido
+            modelo  = new ModeloKNN(preprocesamiento, datosNormalizados.subList(0, trainSize), modoBusqueda);
+            testSet = new ArrayList<>(datosNormalizados.subList(trainSize, total));
+        }
+        servicio.publicar(modelo);
+        etapa = Metricas.etapa("particion", etapa);
 
-        // 4. Evaluar modelo KNN
+        // 4. Evaluar modelo KNN (k fijo, o elegido por validación cruzada con -Dknn.seleccion.kmax=N)
         int k = 15;
-        evaluarModelo(trainSetGlobal, testSet, k);
-        
-        // 5. Guardar modelo serializado ("stressprediction.onnx")
-        guardarModelo("stressprediction.onnx");
+        Integer kMax = Integer.getInteger("knn.seleccion.kmax");
+        if (kMax != null) {
+            SeleccionK.Resultado seleccion = SeleccionK.seleccionar(modelo.filas(), kMax,
+                    Integer.getInteger("knn.seleccion.pliegues", 5), modoBusqueda);
+            seleccion.imprimir();
+            k = seleccion.mejorK();
+            etapa = Metricas.etapa("seleccion", etapa);
+        }
+        if (Boolean.getBoolean("knn.comparar")) {
+            compararBusquedas(modelo.filas(), testSet, k);
+        }
+        evaluarModelo(modelo.filas(), testSet, k);
+        etapa = Metricas.etapa("evaluacion", etapa);
+
+        // 4b. Reducción opcional de prototipos (-Dknn.reduccion=cnn|enn|kmedias)
+        String metodoReduccion = System.getProperty("knn.reduccion");
+        if (metodoReduccion != null) {
+            reducirPrototipos(ReduccionPrototipos.Metodo.valueOf(metodoReduccion.toUpperCase()), testSet, k);
+            etapa = Metricas.etapa("reduccion", etapa);
+        }
+
+        // 4c. Compactación opcional de filas repetidas (-Dknn.compactar=tolerancia; 0 = solo idénticas)
+        String tolerancia = System.getProperty("knn.compactar");
+        if (tolerancia != null) {
+            compactarModelo(Double.parseDouble(tolerancia), testSet, k);
+            etapa = Metricas.etapa("compactacion", etapa);
+        }
         
-        // 6. Exportar JSON para GitHub Pages
-        exportarAJSON("frontend/modelo_data.json");
+        // 5. Guardar modelo en formato binario mapeable
+        guardarModelo("stressprediction.knnm");
+        etapa = Metricas.etapa("guardado", etapa);
+
+        // 6. Exportar JSON para GitHub Pages; el compacto cuantizado, con pérdida,
+        //    solo si se pide (-Dknn.export.bits=8|16) y la página lo carga con ?modelo=compacto
+        medirExportacion("frontend/modelo_data.json", () -> exportarAJSON("frontend/modelo_data.json"));
+        Integer bits = Integer.getInteger("knn.export.bits");
+        if (bits != null) {
+            medirExportacion("frontend/modelo_compacto.json", () -> exportarCompacto("frontend/modelo_compacto.json", bits));
+        }
+        Metricas.etapa("exportacion", etapa);
+
+        if (Metricas.activas()) System.out.print(Metricas.resumen());
     }
 
     // =========================================================
     // EVALUACIÓN DEL MODELO
     // =========================================================
 
-    public static void evaluarModelo(List<double[]> trainSet, List<double[]> testSet, int k) {
+    public static Evaluacion evaluarModelo(List<double[]> trainSet, List<double[]> testSet, int k) {
         System.out.println("Evaluación Modelo KNN (k=" + k + ")");
 
-        int maxTest  = Math.min(testSet.size(), 1000); // Limitar test para velocidad en demo
-        int aciertos = 0;
+        BuscadorKNN buscador = buscadorPara(trainSet); // Construir motor/índice fuera de la medición
+        long inicio = System.nanoTime();
+        int[] predicciones = predecirLote(buscador, testSet, k);
+        long duracion = System.nanoTime() - inicio;
 
-        for (int i = 0; i < maxTest; i++) {
+        int aciertos = 0;
+        for (int i = 0; i < predicciones.length; i++) {
             double[] testInstance = testSet.get(i);
-            int realClass      = (int) testInstance[testInstance.length - 1]; // Último elemento es la clase
-            
-            int predictedClass = predictKNN(trainSet, testInstance, k);
-
-            if (predictedClass == realClass) {
+            int realClass = (int) testInstance[testInstance.length - 1]; // Último elemento es la clase
+            if (predicciones[i] == realClass) {
                 aciertos++;
             }
         }
 
-        double accuracy  = (double) aciertos / maxTest * 100.0;
+        double accuracy   = testSet.isEmpty() ? 0.0 : (double) aciertos / testSet.size() * 100.0;
+        double throughput = predicciones.length / (duracion / 1e9);
 
         // --- Resultados globales ---
         System.out.println("Resultados Finales");
-        System.out.printf("Precisión (Accuracy): %.2f%%%n", accuracy);
+        System.out.printf("Precisión (Accuracy): %.2f%% (%d/%d)%n", accuracy, aciertos, testSet.size());
+        System.out.printf("Rendimiento: %.0f predicciones/s%n", throughput);
+
+        return new Evaluacion(accuracy, duracion, predicciones.length);
+    }
+
+    // Resultado de evaluarModelo: precisión (%) y tiempo de predicción del lote
+    public static class Evaluacion {
+        public final double precision;
+        public final long   nanos;
+        public final int    consultas;
+
+        Evaluacion(double precision, long nanos, int consultas) {
+            this.precision = precision;
+            this.nanos     = nanos;
+            this.consultas = consultas;
+        }
+
+        public double prediccionesPorSegundo() { return consultas / (nanos / 1e9); }
     }
 
     // =========================================================
-    // ALGORITMO KNN
+    // REDUCCIÓN DE PROTOTIPOS
     // =========================================================
 
-    public static int predictKNN(List<double[]> trainSet, double[] testInstance, int k) {
-        List<Par> distancias = new ArrayList<>();
+    /**
+     * Publica un modelo con un conjunto de prototipos antes de guardar y
+     * exportar. El tamaño se fija con -Dknn.reduccion.tamano=N o, si se indica
+     * -Dknn.reduccion.perdida=P, se elige el menor que no pierda más de P puntos
+     * de precisión sobre un 10% de validación separado del entrenamiento.
+     */
+    public static void reducirPrototipos(ReduccionPrototipos.Metodo metodo, List<double[]> testSet, int k) {
+        ModeloKNN actual = servicio.actual();
+        List<double[]> original = actual.filas();
+        long semilla = Long.getLong("knn.reduccion.semilla", 42L);
+        String perdida = System.getProperty("knn.reduccion.perdida");
+
+        List<double[]> reducido;
+        if (perdida != null) {
+            int corte = (int) (original.size() * 0.9);
+            List<double[]> validacion = original.subList(corte, original.size());
+            List<double[]> entrenamiento = original.subList(0, corte);
+            List<double[]> elegido = ReduccionPrototipos.reducirConPerdidaMaxima(
+                    metodo, entrenamiento, validacion, k, Double.parseDouble(perdida), semilla);
+            // Repetir con todo el entrenamiento al tamaño elegido
+            reducido = elegido == entrenamiento ? original
+                    : ReduccionPrototipos.reducir(metodo, original, k,
+                            (int) Math.ceil(elegido.size() / 0.9), semilla);
+        } else {
+            int tamano = Integer.getInteger("knn.reduccion.tamano", original.size() / 10);
+            reducido = ReduccionPrototipos.reducir(metodo, original, k, tamano, semilla);
+        }
 
-        for (double[] trainInstance : trainSet) {
-            double dist = calcularDistanciaEuclidea(testInstance, trainInstance);
-            distancias.add(new Par(dist, (int) trainInstance[trainInstance.length - 1]));
+        ReduccionPrototipos.informar(original, reducido, testSet, k);
+        servicio.publicar(actual.conFilas(reducido));
+    }
+
+    // =========================================================
+    // COMPACTACIÓN
+    // =========================================================
+
+    /**
+     * Publica el modelo con las filas idénticas agrupadas (tolerancia 0, mismas
+     * predicciones) o las de cada celda de la rejilla (tolerancia > 0) e informa
+     * de la reducción y la aceleración sobre testSet. Guardar y exportar usan
+     * después el modelo compactado.
+     */
+    public static void compactarModelo(double tolerancia, List<double[]> testSet, int k) {
+        ModeloKNN actual = modeloCargado();
+        if (actual == null) return;
+        ModeloKNN compactado = actual.compactado(tolerancia);
+        ConjuntoCompacto.informar(actual.buscador(), compactado.compacto(), compactado.buscador(), testSet, k);
+        if (compactado.compacto().grupos() == actual.filas().size()) {
+            System.out.println("Sin filas que agrupar: se conserva el modelo sin compactar.");
+            return;
         }
+        servicio.publicar(compactado);
+    }
+
+    // =========================================================
+    // PREDICCIÓN POR LOTES
+    // =========================================================
+
+    // Ejecutor opcional para los lotes; si es null se usa el pool fork-join común
+    private static volatile ExecutorService ejecutorLotes;
 
-        // Ordenar de menor a mayor distancia
-        distancias.sort((p1, p2) -> Double.compare(p1.distancia, p2.distancia));
+    public static void setEjecutorLotes(ExecutorService ejecutor) { ejecutorLotes = ejecutor; }
 
-        // Votar entre los k vecinos más cercanos
-        Map<Integer, Integer> votos = new HashMap<>();
-        for (int i = 0; i < k && i < distancias.size(); i++) {
-            int clase = distancias.get(i).clase;
-            votos.put(clase, votos.getOrDefault(clase, 0) + 1);
+    public static int[] predecirLote(List<double[]> trainSet, List<double[]> consultas, int k) {
+        return predecirLote(buscadorPara(trainSet), consultas, k);
+    }
+
+    private static int[] predecirLote(BuscadorKNN buscador, List<double[]> consultas, int k) {
+        ExecutorService ejecutor = ejecutorLotes;
+        if (ejecutor == null) {
+            return PrediccionLote.predecir(buscador, consultas, k);
         }
+        int bloques = Runtime.getRuntime().availableProcessors() * 4;
+        return PrediccionLote.predecir(buscador, consultas, k, ejecutor, bloques);
+    }
 
-        // Retornar la clase con más votos
-        return votos.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(-1);
+    // =========================================================
+    // ALGORITMO KNN
+    // =========================================================
+
+    public static int predictKNN(List<double[]> trainSet, double[] testInstance, int k) {
+        long inicio = Metricas.inicio();
+        int clase = buscadorPara(trainSet).predecir(testInstance, k);
+        Metricas.latencia(Metricas.PREDICT_KNN, inicio);
+        return clase;
     }
-    
-    private static double calcularDistanciaEuclidea(double[] inst1, double[] inst2) {
-        double sum = 0.0;
-        // Excluir la clase target (último elemento)
-        for (int i = 0; i < inst1.length - 1; i++) { 
-            double diff = inst1[i] - inst2[i];
-            sum += diff * diff;
+
+    // Estrategia de búsqueda: "kd" (por defecto), "bruta", "simd", "q8" o "q16" (-Dknn.busqueda=...)
+    private static volatile String modoBusqueda = System.getProperty("knn.busqueda", "kd");
+
+    public static void setModoBusqueda(String modo) { modoBusqueda = modo; }
+
+    /**
+     * Buscador para unas filas: el del modelo publicado si son sus filas y, si
+     * no, uno nuevo sobre una instantánea de la lista. La lista del llamador
+     * puede cambiar, así que no se guarda nada entre llamadas: para muchas
+     * consultas sobre las mismas filas, publicar un ModeloKNN o usar predecirLote.
+     */
+    private static BuscadorKNN buscadorPara(List<double[]> trainSet) {
+        ModeloKNN actual = servicio.actual();
+        if (actual != null && actual.filas() == trainSet && actual.modoBusqueda().equals(modoBusqueda)) {
+            return actual.buscador();
         }
-        return Math.sqrt(sum);
+        // Filas fuera del heap: solo fuerza bruta sobre los segmentos (ver ModeloKNN.crearBuscador)
+        String modo = AlmacenFueraHeap.origen(trainSet) != null ? "bruta" : modoBusqueda;
+        return ModeloKNN.crearBuscador(ModeloKNN.instantanea(trainSet), modo);
     }
 
-    static class Par {
-        double distancia;
-        int    clase;
-        Par(double d, int c) { this.distancia = d; this.clase = c; }
+    /**
+     * Ejecuta las mismas consultas con el árbol KD y con fuerza bruta,
+     * comprobando que las predicciones coinciden y comparando tiempos.
+     */
+    public static void compararBusquedas(List<double[]> trainSet, List<double[]> testSet, int k) {
+        if (AlmacenFueraHeap.origen(trainSet) != null) {
+            // El árbol necesitaría una copia en el heap de todas las filas
+            System.out.println("Comparación de búsqueda omitida: filas fuera del heap, solo fuerza bruta");
+            return;
+        }
+        List<double[]> filas = ModeloKNN.instantanea(trainSet);
+        BuscadorKNN bruta = ModeloKNN.crearBuscador(filas, "bruta");
+        BuscadorKNN kd    = ModeloKNN.crearBuscador(filas, "kd");
+
+        int[] predBruta = new int[testSet.size()];
+        long t0 = System.nanoTime();
+        for (int i = 0; i < predBruta.length; i++) predBruta[i] = bruta.predecir(testSet.get(i), k);
+        long tBruta = System.nanoTime() - t0;
+
+        int distintas = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < predBruta.length; i++) {
+            if (kd.predecir(testSet.get(i), k) != predBruta[i]) distintas++;
+        }
+        long tKD = System.nanoTime() - t0;
+
+        System.out.println("Comparación de búsqueda (k=" + k + ", consultas=" + predBruta.length + ")");
+        System.out.printf("Fuerza bruta: %.1f ms | Árbol KD: %.1f ms | Aceleración: %.2fx%n",
+                tBruta / 1e6, tKD / 1e6, (double) tBruta / Math.max(tKD, 1));
+        System.out.println("Predicciones distintas: " + distintas);
     }
 
     // =========================================================
@@ -160,67 +324,38 @@ public class Modelo {
         List<double[]> normalizados = new ArrayList<>();
         if (registros.isEmpty()) return normalizados;
 
-        // Inicializar rangos
-        minAge = minPhone = minSocial = minProd = minSleep = minApp = minCaff = minScreen = Double.MAX_VALUE;
-        maxAge = maxPhone = maxSocial = maxProd = maxSleep = maxApp = maxCaff = maxScreen = Double.MIN_VALUE;
-
-        // Reiniciar mapas
-        genderMap.clear();
-        occupationMap.clear();
-        deviceMap.clear();
-
         // 1. Calcular rangos y construir mappings
-        for (Datos.Registro r : registros) {
-            minAge    = Math.min(minAge,    r.age);                    maxAge    = Math.max(maxAge,    r.age);
-            minPhone  = Math.min(minPhone,  r.dailyPhoneHours);        maxPhone  = Math.max(maxPhone,  r.dailyPhoneHours);
-            minSocial = Math.min(minSocial, r.socialMediaHours);       maxSocial = Math.max(maxSocial, r.socialMediaHours);
-            minProd   = Math.min(minProd,   r.workProductivityScore);  maxProd   = Math.max(maxProd,   r.workProductivityScore);
-            minSleep  = Math.min(minSleep,  r.sleepHours);             maxSleep  = Math.max(maxSleep,  r.sleepHours);
-            minApp    = Math.min(minApp,    r.appUsageCount);          maxApp    = Math.max(maxApp,    r.appUsageCount);
-            minCaff   = Math.min(minCaff,   r.caffeineIntakeCups);     maxCaff   = Math.max(maxCaff,   r.caffeineIntakeCups);
-            minScreen = Math.min(minScreen, r.weekendScreenTimeHours); maxScreen = Math.max(maxScreen, r.weekendScreenTimeHours);
-
-            genderMap.putIfAbsent(r.gender,      genderMap.size());
-            occupationMap.putIfAbsent(r.occupation, occupationMap.size());
-            deviceMap.putIfAbsent(r.deviceType,  deviceMap.size());
-        }
-
-        int maxGender = Math.max(genderMap.size() - 1, 1);
-        int maxOcc    = Math.max(occupationMap.size() - 1, 1);
-        int maxDevice = Math.max(deviceMap.size() - 1, 1);
+        Preprocesamiento p = Preprocesamiento.ajustar(registros);
 
         // 2. Construir vectores
         for (Datos.Registro r : registros) {
-            double[] vector = new double[12]; 
-
-            vector[0]  = normalizar(r.age,                   minAge,    maxAge);
-            vector[1]  = (double) genderMap.get(r.gender)          / maxGender;
-            vector[2]  = (double) occupationMap.get(r.occupation)   / maxOcc;
-            vector[3]  = (double) deviceMap.get(r.deviceType)       / maxDevice;
-            vector[4]  = normalizar(r.dailyPhoneHours,       minPhone,  maxPhone);
-            vector[5]  = normalizar(r.socialMediaHours,      minSocial, maxSocial);
-            vector[6]  = normalizar(r.workProductivityScore, minProd,   maxProd);
-            vector[7]  = normalizar(r.sleepHours,            minSleep,  maxSleep);
-            vector[8]  = normalizar(r.appUsageCount,         minApp,    maxApp);
-            vector[9]  = normalizar(r.caffeineIntakeCups,    minCaff,   maxCaff);
-            vector[10] = normalizar(r.weekendScreenTimeHours,minScreen, maxScreen);
-
-            // Target (1-10) -> 3 clases
-            int label;
-            if      (r.stressLevel <= 3) label = 0; // Bajo
-            else if (r.stressLevel <= 6) label = 1; // Medio
-            else                         label = 2; // Alto
-            vector[11] = label;
-
-            normalizados.add(vector);
+            normalizados.add(p.vectorizar(r));
         }
 
+        preprocesamiento = p;
         return normalizados;
     }
 
-    private static double normalizar(double val, double min, double max) {
-        if (max == min) return 0.0;
-        return (val - min) / (max - min);
+    /**
+     * Carga y normaliza el CSV fuera del heap y separa un 20% de prueba (ver
+     * AlmacenFueraHeap). Devuelve null si no se pudo leer o no hay filas.
+     */
+    public static AlmacenFueraHeap.Particion cargarFueraHeap(String rutaArchivo) {
+        try {
+            AlmacenFueraHeap.Particion particion = AlmacenFueraHeap.cargar(rutaArchivo, 0.2);
+            for (String error : particion.errores) {
+                System.err.println(error);
+            }
+            Metricas.lineasDescartadas(particion.errores.size());
+            int total = particion.entrenamiento.tamano() + particion.prueba.tamano();
+            System.out.println("Datos cargados exitosamente (fuera del heap): " + total + " registros.");
+            if (total == 0) return null;
+            preprocesamiento = particion.preprocesamiento;
+            return particion;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     // =========================================================
@@ -228,114 +363,108 @@ public class Modelo {
     // =========================================================
 
     // =========================================================
-    // SERIALIZACIÓN (Simulando "onnx")
+    // SERIALIZACIÓN (formato binario .knnm)
     // =========================================================
 
     public static void guardarModelo(String ruta) {
-        ModeloSerializado estado = new ModeloSerializado();
-        estado.trainSet = trainSetGlobal;
-        estado.genderMap = genderMap;
-        estado.occupationMap = occupationMap;
-        estado.deviceMap = deviceMap;
-        
-        estado.minAge = minAge; estado.maxAge = maxAge;
-        estado.minPhone = minPhone; estado.maxPhone = maxPhone;
-        estado.minSocial = minSocial; estado.maxSocial = maxSocial;
-        estado.minProd = minProd; estado.maxProd = maxProd;
-        estado.minSleep = minSleep; estado.maxSleep = maxSleep;
-        estado.minApp = minApp; estado.maxApp = maxApp;
-        estado.minCaff = minCaff; estado.maxCaff = maxCaff;
-        estado.minScreen = minScreen; estado.maxScreen = maxScreen;
-
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ruta))) {
-            oos.writeObject(estado);
+        ModeloKNN modelo = modeloCargado();
+        if (modelo == null) return;
+        try {
+            modelo.guardar(ruta);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private static ModeloKNN modeloCargado() {
+        ModeloKNN modelo = servicio.actual();
+        if (modelo == null) System.out.println("Error: Modelo no cargado.");
+        return modelo;
+    }
+
+    private static void medirExportacion(String ruta, Runnable exportar) {
+        long inicio = System.nanoTime();
+        exportar.run();
+        long duracion = System.nanoTime() - inicio;
+        System.out.printf("Exportado %s: %d KB en %.1f ms%n",
+                ruta, new File(ruta).length() / 1024, duracion / 1e6);
+    }
+
     public static void exportarAJSON(String ruta) {
-        StringBuilder json = new StringBuilder();
-        json.append("{\n");
-        
-        // 1. Rangos
-        json.append("  \"ranges\": {\n");
-        json.append(String.format("    \"minAge\": %.2f, \"maxAge\": %.2f,\n", minAge, maxAge));
-        json.append(String.format("    \"minPhone\": %.2f, \"maxPhone\": %.2f,\n", minPhone, maxPhone));
-        json.append(String.format("    \"minSocial\": %.2f, \"maxSocial\": %.2f,\n", minSocial, maxSocial));
-        json.append(String.format("    \"minProd\": %.2f, \"maxProd\": %.2f,\n", minProd, maxProd));
-        json.append(String.format("    \"minSleep\": %.2f, \"maxSleep\": %.2f,\n", minSleep, maxSleep));
-        json.append(String.format("    \"minApp\": %.2f, \"maxApp\": %.2f,\n", minApp, maxApp));
-        json.append(String.format("    \"minCaff\": %.2f, \"maxCaff\": %.2f,\n", minCaff, maxCaff));
-        json.append(String.format("    \"minScreen\": %.2f, \"maxScreen\": %.2f\n", minScreen, maxScreen));
-        json.append("  },\n");
-
-        // 2. Mappings (Invertir mapa para exportar Nombre -> Valor no es necesario, el JS necesita Nombre -> Valor)
-        // Pero aquí ya tenemos Nombre -> Valor
-        json.append("  \"genderMap\": ").append(mapToJson(genderMap)).append(",\n");
-        json.append("  \"occupationMap\": ").append(mapToJson(occupationMap)).append(",\n");
-        json.append("  \"deviceMap\": ").append(mapToJson(deviceMap)).append(",\n");
-
-        // 3. TrainSet (Array de arrays)
-        json.append("  \"trainSet\": [\n");
-        for (int i = 0; i < trainSetGlobal.size(); i++) {
-            double[] vec = trainSetGlobal.get(i);
-            json.append("    [");
-            for (int j = 0; j < vec.length; j++) {
-                json.append(String.format(java.util.Locale.US, "%.4f", vec[j])); // Forzar punto decimal
-                if (j < vec.length - 1) json.append(", ");
-            }
-            json.append("]");
-            if (i < trainSetGlobal.size() - 1) json.append(",\n");
+        ModeloKNN modelo = modeloCargado();
+        if (modelo == null) return;
+        try {
+            modelo.exportarJSON(ruta);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        json.append("\n  ]\n");
-        json.append("}");
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(ruta)) {
-            fos.write(json.toString().getBytes());
-            // System.out.println("Modelo JSON exportado a: " + ruta);
+    // Variante compacta: características cuantizadas a uint8/uint16 en base64 (ver ExportadorWeb)
+    public static void exportarCompacto(String ruta, int bits) {
+        ModeloKNN modelo = modeloCargado();
+        if (modelo == null) return;
+        try {
+            modelo.exportarCompacto(ruta, bits);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private static String mapToJson(Map<String, Integer> map) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        int count = 0;
-        for (Map.Entry<String, Integer> entry : map.entrySet()) {
-            sb.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue());
-            if (++count < map.size()) sb.append(", ");
+    /**
+     * Carga un modelo .knnm (mapeado en memoria) o, por compatibilidad, uno
+     * guardado con la serialización Java anterior, y lo publica de una vez:
+     * las predicciones en curso terminan con el modelo anterior.
+     */
+    public static void cargarModelo(String ruta) {
+        try {
+            servicio.recargar(ruta, modoBusqueda);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        sb.append("}");
-        return sb.toString();
     }
 
-    
-    public static void cargarModelo(String ruta) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ruta))) {
-            ModeloSerializado estado = (ModeloSerializado) ois.readObject();
-            
-            trainSetGlobal = estado.trainSet;
-            genderMap = estado.genderMap;
-            occupationMap = estado.occupationMap;
-            deviceMap = estado.deviceMap;
-            
-            minAge = estado.minAge; maxAge = estado.maxAge;
-            minPhone = estado.minPhone; maxPhone = estado.maxPhone;
-            minSocial = estado.minSocial; maxSocial = estado.maxSocial;
-            minProd = estado.minProd; maxProd = estado.maxProd;
-            minSleep = estado.minSleep; maxSleep = estado.maxSleep;
-            minApp = estado.minApp; maxApp = estado.maxApp;
-            minCaff = estado.minCaff; maxCaff = estado.maxCaff;
-            minScreen = estado.minScreen; maxScreen = estado.maxScreen;
-            
-        } catch (Exception e) {
+    /**
+     * Puntúa un CSV de usuarios con el modelo publicado y escribe
+     * "User_ID,predicted_class" en el orden de entrada (ver PuntuadorCSV).
+     */
+    public static void puntuarCSV(String entrada, String salida, int k) {
+        ModeloKNN modelo = modeloCargado();
+        if (modelo == null) return;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(entrada), 1 << 16);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(salida), 1 << 16)) {
+            PuntuadorCSV.Resumen resumen = new PuntuadorCSV(modelo, k).puntuar(in, out);
+            System.out.println(resumen);
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Clase auxiliar interna para serializar
+    // =========================================================
+    // ACTUALIZACIÓN INCREMENTAL
+    // =========================================================
+
+    private static ActualizadorModelo actualizador;
+
+    /**
+     * Añade registros etiquetados al modelo publicado sin reentrenar desde cero
+     * (ver ActualizadorModelo). Con -Dknn.ventana=N se conservan solo las N
+     * filas más recientes; con -Dknn.actualizacion.delta=N se reconstruye el
+     * índice cuando las filas añadidas y expulsadas desde la última vez pasan de
+     * N. Guardar o exportar sigue siendo un paso aparte.
+     */
+    public static synchronized void agregarRegistros(List<Datos.Registro> nuevos) {
+        ModeloKNN actual = modeloCargado();
+        if (actual == null) return;
+        // Si se cargó o entrenó otro modelo desde la última actualización, partir de él
+        if (actualizador == null || actualizador.publicado() != actual) {
+            actualizador = new ActualizadorModelo(servicio, actual, Integer.getInteger("knn.ventana", 0),
+                    Integer.getInteger("knn.actualizacion.delta", ActualizadorModelo.MAX_DELTA));
+        }
+        actualizador.agregar(nuevos);
+    }
+
+    // Formato anterior (serialización Java); solo se lee, ver ModeloBinario para convertirlo
     static class ModeloSerializado implements Serializable {
         private static final long serialVersionUID = 1L;
         List<double[]> trainSet;
@@ -359,29 +488,8 @@ public class Modelo {
                                                double sleepHours, int appUsageCount,
                                                double caffeineIntakeCups, double weekendScreenTimeHours,
                                                int k) {
-        if (trainSetGlobal == null || trainSetGlobal.isEmpty()) {
-            return "Error: Modelo no cargado.";
-        }
-
-        double[] vector = new double[12];
-        int maxGender = Math.max(genderMap.size() - 1, 1);
-        int maxOcc    = Math.max(occupationMap.size() - 1, 1);
-        int maxDevice = Math.max(deviceMap.size() - 1, 1);
-
-        vector[0]  = normalizar(age,                   minAge,    maxAge);
-        vector[1]  = (double) genderMap.getOrDefault(gender, 0) / maxGender;
-        vector[2]  = (double) occupationMap.getOrDefault(occupation, 0) / maxOcc;
-        vector[3]  = (double) deviceMap.getOrDefault(deviceType, 0) / maxDevice;
-        vector[4]  = normalizar(dailyPhoneHours,       minPhone,  maxPhone);
-        vector[5]  = normalizar(socialMediaHours,      minSocial, maxSocial);
-        vector[6]  = normalizar(workProductivityScore, minProd,   maxProd);
-        vector[7]  = normalizar(sleepHours,            minSleep,  maxSleep);
-        vector[8]  = normalizar(appUsageCount,         minApp,    maxApp);
-        vector[9]  = normalizar(caffeineIntakeCups,    minCaff,   maxCaff);
-        vector[10] = normalizar(weekendScreenTimeHours,minScreen, maxScreen);
-        vector[11] = -1; 
-
-        int clasePredicha = predictKNN(trainSetGlobal, vector, k);
-        return CLASE_NOMBRE[clasePredicha];
+        return servicio.predecirNuevoUsuario(age, gender, occupation, deviceType, dailyPhoneHours,
+                socialMediaHours, workProductivityScore, sleepHours, appUsageCount,
+                caffeineIntakeCups, weekendScreenTimeHours, k);
     }
 }
\ No newline at end of file
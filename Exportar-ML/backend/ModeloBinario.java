@@ -0,0 +1,598 @@
+package backend;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Formato binario versionado del modelo KNN (extensión .knnm), little-endian:
+ *
+ *   cabecera   magic "KNNM", versión, dims, filas, numClases,
+ *              offset de características, offset de etiquetas
+ *   rangos     16 doubles: min/max de age, phone, social, prod, sleep, app, caff, screen
+ *   mappings   gender, occupation, device: nº de entradas y (largo, UTF-8, código)
+ *   relleno    hasta múltiplo de 8
+ *   bloque     filas * dims doubles contiguos (vectores normalizados)
+ *   etiquetas  filas bytes (clase de cada fila)
+ *
+ * La versión 2 guarda un modelo compactado (ver ConjuntoCompacto): las filas
+ * son los representantes y la cabecera añade el número de filas originales, la
+ * tolerancia y el offset de un último bloque, alineado a 4 bytes, con los
+ * inicios de cada grupo (grupos + 1 ints), sus miembros (índices originales,
+ * ints) y la clase de cada fila original (bytes).
+ *
+ * Cualquier versión puede terminar con el árbol KD de sus filas (ver IndiceKD),
+ * alineado a 8 bytes y localizado por un pie de 16 bytes al final del archivo:
+ *
+ *   cajas      por nodo, dims mínimos y dims máximos (doubles)
+ *   nodos      por nodo, inicio, fin, hijo izquierdo y derecho (ints; hoja si izq = -1)
+ *   orden      filas ints: índice de fila de cada posición del árbol
+ *   pie        offset del árbol (long), número de nodos (int), magic "KDIX"
+ *
+ * Un lector que no lo conoce lo ignora. Con él, el modo "kd" busca sobre las
+ * páginas mapeadas en lugar de copiar las filas y reconstruir el árbol.
+ *
+ * Al abrirlo el archivo se mapea en memoria: la cabecera y los mappings se leen
+ * de inmediato y las características se consultan directamente sobre las páginas
+ * mapeadas, que el sistema comparte entre procesos que sirven el mismo archivo.
+ */
+public class ModeloBinario {
+
+    public static final int MAGIC   = 0x4D4E4E4B; // "KNNM" en little-endian
+    public static final int VERSION = 1;
+    public static final int VERSION_COMPACTO = 2;
+    public static final int MAGIC_INDICE = 0x5849444B; // "KDIX" en little-endian
+
+    private static final int TAM_CABECERA    = 4 * 5 + 8 * 2;
+    private static final int TAM_CABECERA_V2 = TAM_CABECERA + 4 + 8 + 8;
+    private static final int NUM_RANGOS   = 16;
+    private static final int TAM_PIE      = 8 + 4 + 4;
+
+    public final int      dims;
+    public final int      filas;
+    public final int      numClases;
+    public final double[] rangos;
+    public final Map<String, Integer> genderMap;
+    public final Map<String, Integer> occupationMap;
+    public final Map<String, Integer> deviceMap;
+
+    private final DoubleBuffer caracteristicas;
+    private final ByteBuffer   etiquetas;
+    private final ByteBuffer   grupos; // solo en la versión 2
+    private final double       tolerancia;
+    private final ByteBuffer   arbol;  // null si el archivo no guarda el árbol KD
+    private final int          numNodos;
+
+    private ModeloBinario(int dims, int filas, int numClases, double[] rangos,
+                          Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                          Map<String, Integer> deviceMap, DoubleBuffer caracteristicas, ByteBuffer etiquetas,
+                          ByteBuffer grupos, double tolerancia, ByteBuffer arbol, int numNodos) {
+        this.dims            = dims;
+        this.filas           = filas;
+        this.numClases       = numClases;
+        this.rangos          = rangos;
+        this.genderMap       = genderMap;
+        this.occupationMap   = occupationMap;
+        this.deviceMap       = deviceMap;
+        this.caracteristicas = caracteristicas;
+        this.etiquetas       = etiquetas;
+        this.grupos          = grupos;
+        this.tolerancia      = tolerancia;
+        this.arbol           = arbol;
+        this.numNodos        = numNodos;
+    }
+
+    // =========================================================
+    // ESCRITURA
+    // =========================================================
+
+    public static void escribir(String ruta, List<double[]> trainSet, double[] rangos,
+                                Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                                Map<String, Integer> deviceMap) throws IOException {
+        escribir(ruta, trainSet, rangos, genderMap, occupationMap, deviceMap, null);
+    }
+
+    /**
+     * Con un conjunto compactado (no null) se escriben sus representantes y grupos
+     * (versión 2). Se añade el árbol KD de las filas salvo que vengan de un
+     * almacén fuera del heap (construirlo las copiaría todas al heap).
+     */
+    public static void escribir(String ruta, List<double[]> trainSet, double[] rangos,
+                                Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                                Map<String, Integer> deviceMap, ConjuntoCompacto compacto) throws IOException {
+        if (compacto != null) trainSet = compacto.representantes();
+        int filas = trainSet.size();
+        int dims  = filas == 0 ? 0 : trainSet.get(0).length - 1;
+
+        // Rangos y mappings primero para conocer los offsets de los bloques
+        ByteBuffer meta = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        meta.position(compacto != null ? TAM_CABECERA_V2 : TAM_CABECERA);
+        for (int i = 0; i < NUM_RANGOS; i++) meta.putDouble(rangos[i]);
+        meta = escribirMapa(meta, genderMap);
+        meta = escribirMapa(meta, occupationMap);
+        meta = escribirMapa(meta, deviceMap);
+        while (meta.position() % 8 != 0) meta.put((byte) 0);
+
+        long offsetCaract    = meta.position();
+        long offsetEtiquetas = offsetCaract + (long) filas * dims * 8;
+
+        int maxClase = 0;
+        for (double[] fila : trainSet) maxClase = Math.max(maxClase, (int) fila[dims]);
+
+        IndiceKD indice = filas == 0 || AlmacenFueraHeap.origen(trainSet) != null
+                ? null : new IndiceKD(MotorKNN.desdeLista(trainSet));
+
+        meta.putInt(0, MAGIC);
+        meta.putInt(4, compacto != null ? VERSION_COMPACTO : VERSION);
+        meta.putInt(8, dims);
+        meta.putInt(12, filas);
+        meta.putInt(16, filas == 0 ? 0 : maxClase + 1);
+        meta.putLong(20, offsetCaract);
+        meta.putLong(28, offsetEtiquetas);
+        long offsetGrupos = (offsetEtiquetas + filas + 3) & ~3L;
+        if (compacto != null) {
+            meta.putInt(36, compacto.filasOriginales());
+            meta.putDouble(40, compacto.tolerancia());
+            meta.putLong(48, offsetGrupos);
+        }
+        meta.flip();
+
+        // Se escribe en un archivo aparte y se renombra: un modelo abierto sobre
+        // la misma ruta conserva su mapeo intacto (truncarlo invalidaría sus páginas)
+        Path destino  = Paths.get(ruta).toAbsolutePath();
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escribirTodo(canal, meta);
+
+            // Bloque contiguo de características
+            ByteBuffer buf = ByteBuffer.allocate(Math.max(8, dims * 8) * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            for (double[] fila : trainSet) {
+                if (buf.remaining() < dims * 8) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+                for (int j = 0; j < dims; j++) buf.putDouble(fila[j]);
+            }
+            buf.flip(); escribirTodo(canal, buf); buf.clear();
+
+            // Columna de etiquetas
+            for (double[] fila : trainSet) {
+                if (!buf.hasRemaining()) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+                buf.put((byte) fila[dims]);
+            }
+            buf.flip(); escribirTodo(canal, buf); buf.clear();
+
+            if (compacto != null) {
+                // Grupos: relleno hasta múltiplo de 4, inicios, miembros y clases originales
+                for (long p = offsetEtiquetas + filas; p < offsetGrupos; p++) buf.put((byte) 0);
+                for (int v : compacto.inicios()) {
+                    if (buf.remaining() < 4) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+                    buf.putInt(v);
+                }
+                for (int v : compacto.miembros()) {
+                    if (buf.remaining() < 4) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+                    buf.putInt(v);
+                }
+                for (byte c : compacto.claseDe()) {
+                    if (!buf.hasRemaining()) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+                    buf.put(c);
+                }
+                buf.flip(); escribirTodo(canal, buf); buf.clear();
+            }
+
+            if (indice != null) escribirArbol(canal, buf, indice, dims);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Árbol KD al final del archivo, alineado a 8 bytes, y su pie (ver el formato arriba)
+    private static void escribirArbol(FileChannel canal, ByteBuffer buf, IndiceKD indice, int dims) throws IOException {
+        long offsetArbol = (canal.position() + 7) & ~7L;
+        for (long p = canal.position(); p < offsetArbol; p++) buf.put((byte) 0);
+
+        int nodos = indice.numNodos();
+        double[] cajaMin = indice.cajaMin(), cajaMax = indice.cajaMax();
+        for (int nodo = 0, base = 0; nodo < nodos; nodo++, base += dims) {
+            if (buf.remaining() < 16 * dims) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+            for (int j = 0; j < dims; j++) buf.putDouble(cajaMin[base + j]);
+            for (int j = 0; j < dims; j++) buf.putDouble(cajaMax[base + j]);
+        }
+        int[] inicio = indice.inicio(), fin = indice.fin(), izq = indice.izq(), der = indice.der();
+        for (int nodo = 0; nodo < nodos; nodo++) {
+            if (buf.remaining() < 16) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+            buf.putInt(inicio[nodo]).putInt(fin[nodo]).putInt(izq[nodo]).putInt(der[nodo]);
+        }
+        for (int fila : indice.orden()) {
+            if (buf.remaining() < 4) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+            buf.putInt(fila);
+        }
+        if (buf.remaining() < TAM_PIE) { buf.flip(); escribirTodo(canal, buf); buf.clear(); }
+        buf.putLong(offsetArbol).putInt(nodos).putInt(MAGIC_INDICE);
+        buf.flip(); escribirTodo(canal, buf); buf.clear();
+    }
+
+    private static ByteBuffer escribirMapa(ByteBuffer buf, Map<String, Integer> mapa) {
+        buf = asegurar(buf, 4);
+        buf.putInt(mapa.size());
+        for (Map.Entry<String, Integer> e : mapa.entrySet()) {
+            byte[] nombre = e.getKey().getBytes(StandardCharsets.UTF_8);
+            buf = asegurar(buf, 2 + nombre.length + 4);
+            buf.putShort((short) nombre.length);
+            buf.put(nombre);
+            buf.putInt(e.getValue());
+        }
+        return buf;
+    }
+
+    private static ByteBuffer asegurar(ByteBuffer buf, int bytes) {
+        if (buf.remaining() >= bytes) return buf;
+        ByteBuffer mayor = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.flip();
+        mayor.put(buf);
+        return mayor;
+    }
+
+    private static void escribirTodo(FileChannel canal, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) canal.write(buf);
+    }
+
+    // =========================================================
+    // LECTURA (MAPEADA)
+    // =========================================================
+
+    public static boolean esBinario(String ruta) {
+        try (FileChannel canal = FileChannel.open(Paths.get(ruta), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            return canal.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static ModeloBinario abrir(String ruta) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(ruta), StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Modelo demasiado grande para un único mapeo: " + canal.size() + " bytes");
+            }
+            // El mapeo sigue siendo válido después de cerrar el canal
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            mapa.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapa.getInt(0) != MAGIC) throw new IOException("No es un modelo .knnm: " + ruta);
+            int version = mapa.getInt(4);
+            if (version != VERSION && version != VERSION_COMPACTO) throw new IOException("Versión de modelo no soportada: " + version);
+
+            int  dims            = mapa.getInt(8);
+            int  filas           = mapa.getInt(12);
+            int  numClases       = mapa.getInt(16);
+            long offsetCaract    = mapa.getLong(20);
+            long offsetEtiquetas = mapa.getLong(28);
+
+            mapa.position(version == VERSION_COMPACTO ? TAM_CABECERA_V2 : TAM_CABECERA);
+            double[] rangos = new double[NUM_RANGOS];
+            for (int i = 0; i < NUM_RANGOS; i++) rangos[i] = mapa.getDouble();
+            Map<String, Integer> gender     = leerMapa(mapa);
+            Map<String, Integer> occupation = leerMapa(mapa);
+            Map<String, Integer> device     = leerMapa(mapa);
+
+            DoubleBuffer caract = mapa.slice((int) offsetCaract, filas * dims * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            ByteBuffer etiquetas = mapa.slice((int) offsetEtiquetas, filas);
+
+            ByteBuffer grupos = null;
+            double tolerancia = 0.0;
+            if (version == VERSION_COMPACTO) {
+                int  originales   = mapa.getInt(36);
+                long offsetGrupos = mapa.getLong(48);
+                tolerancia = mapa.getDouble(40);
+                grupos = mapa.slice((int) offsetGrupos, (filas + 1) * 4 + originales * 5).order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            ByteBuffer arbol = null;
+            int numNodos = 0;
+            int tam = mapa.capacity();
+            if (tam >= offsetEtiquetas + filas + TAM_PIE && mapa.getInt(tam - 4) == MAGIC_INDICE) {
+                long offsetArbol = mapa.getLong(tam - TAM_PIE);
+                numNodos = mapa.getInt(tam - 8);
+                arbol = mapa.slice((int) offsetArbol, tam - TAM_PIE - (int) offsetArbol).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new ModeloBinario(dims, filas, numClases, rangos, gender, occupation, device, caract, etiquetas,
+                    grupos, tolerancia, arbol, numNodos);
+        }
+    }
+
+    private static Map<String, Integer> leerMapa(ByteBuffer buf) {
+        int entradas = buf.getInt();
+        Map<String, Integer> mapa = new HashMap<>();
+        for (int i = 0; i < entradas; i++) {
+            byte[] nombre = new byte[buf.getShort() & 0xffff];
+            buf.get(nombre);
+            mapa.put(new String(nombre, StandardCharsets.UTF_8), buf.getInt());
+        }
+        return mapa;
+    }
+
+    /**
+     * Conjunto compactado de un archivo de versión 2, con los representantes
+     * mapeados y los grupos copiados al heap; null en la versión 1.
+     */
+    public ConjuntoCompacto compacto() {
+        if (grupos == null) return null;
+        int originales = (grupos.capacity() - (filas + 1) * 4) / 5;
+        int[] inicios  = new int[filas + 1];
+        int[] miembros = new int[originales];
+        byte[] clases  = new byte[originales];
+        grupos.asIntBuffer().get(0, inicios).get(filas + 1, miembros);
+        grupos.get((filas + 1 + originales) * 4, clases);
+        return new ConjuntoCompacto(filas(), inicios, miembros, clases, tolerancia);
+    }
+
+    public double valor(int fila, int dim) { return caracteristicas.get(fila * dims + dim); }
+
+    public int etiqueta(int fila) { return etiquetas.get(fila); }
+
+    /** Vista de solo lectura con el formato clásico (características + clase), fila a fila. */
+    public List<double[]> filas() {
+        return new Filas();
+    }
+
+    /** Búsqueda por fuerza bruta directamente sobre las páginas mapeadas. */
+    public BuscadorKNN motor() {
+        return new MotorMapeado();
+    }
+
+    /**
+     * Árbol KD guardado en el archivo, buscando directamente sobre las páginas
+     * mapeadas; null si el archivo no lo trae (entonces "kd" usa copiarAMotor).
+     */
+    public BuscadorKNN indice() {
+        return arbol != null ? new IndiceMapeado() : null;
+    }
+
+    /** Copia el bloque mapeado a un MotorKNN en el heap (necesario para SIMD o sin árbol guardado). */
+    public MotorKNN copiarAMotor() {
+        double[] plano = new double[filas * dims];
+        caracteristicas.get(0, plano);
+        int[] clases = new int[filas];
+        for (int i = 0; i < filas; i++) clases[i] = etiquetas.get(i);
+        return new MotorKNN(plano, clases, dims);
+    }
+
+    private class Filas extends AbstractList<double[]> implements RandomAccess {
+        @Override
+        public double[] get(int i) {
+            double[] fila = new double[dims + 1];
+            caracteristicas.get(i * dims, fila, 0, dims);
+            fila[dims] = etiquetas.get(i);
+            return fila;
+        }
+
+        @Override
+        public int size() { return filas; }
+
+        ModeloBinario modelo() { return ModeloBinario.this; }
+    }
+
+    // Devuelve el modelo mapeado detrás de una lista obtenida con filas(), o null
+    static ModeloBinario origen(List<double[]> lista) {
+        return lista instanceof Filas ? ((Filas) lista).modelo() : null;
+    }
+
+    private int votar(HeapVecinos heap, int[] votos) {
+        Arrays.fill(votos, 0);
+        for (int i = 0; i < heap.tam; i++) votos[etiquetas.get(heap.idx[i])]++;
+        return MotorKNN.ganadora(votos);
+    }
+
+    private class MotorMapeado implements BuscadorKNN {
+        private final ThreadLocal<MotorKNN.Trabajo> trabajo = ThreadLocal.withInitial(MotorKNN.Trabajo::new);
+
+        @Override public int tamano() { return filas; }
+        @Override public int dims()   { return dims; }
+
+        @Override
+        public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+            if (filas == 0 || k <= 0) return 0;
+            HeapVecinos heap = trabajo.get().heap;
+            seleccionar(consulta, Math.min(k, filas), heap);
+            return heap.extraerOrdenados(indices, distancias);
+        }
+
+        @Override
+        public int predecir(double[] consulta, int k) {
+            if (filas == 0 || k <= 0) return -1;
+            MotorKNN.Trabajo t = trabajo.get();
+            long t0 = Metricas.inicio();
+            seleccionar(consulta, Math.min(k, filas), t.heap);
+            long t1 = Metricas.busqueda(t0, filas);
+            int clase = votar(t.heap, t.votos(numClases));
+            Metricas.latencia(Metricas.VOTACION, t1);
+            return clase;
+        }
+
+        @Override
+        public boolean prediceEnLote() { return true; }
+
+        // Una sola lectura de las páginas mapeadas para todo el lote (ver MotorKNN.predecirVarios)
+        @Override
+        public void predecirVarios(double[][] consultas, int desde, int hasta, int k, int[] salida) {
+            if (filas == 0 || k <= 0) {
+                for (int q = desde; q < hasta; q++) salida[q] = -1;
+                return;
+            }
+            MotorKNN.Trabajo t = trabajo.get();
+            HeapVecinos[] heaps = t.heaps(hasta - desde);
+            for (HeapVecinos heap : heaps) heap.reiniciar(Math.min(k, filas));
+
+            double[] fila = new double[dims];
+            for (int i = 0, base = 0; i < filas; i++, base += dims) {
+                caracteristicas.get(base, fila);
+                for (int q = desde; q < hasta; q++) {
+                    double[] consulta = consultas[q];
+                    double sum = 0.0;
+                    for (int j = 0; j < dims; j++) {
+                        double diff = consulta[j] - fila[j];
+                        sum += diff * diff;
+                    }
+                    HeapVecinos heap = heaps[q - desde];
+                    if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, i);
+                }
+            }
+
+            Metricas.filasRecorridas((long) filas * (hasta - desde));
+            int[] votos = t.votos(numClases);
+            for (int q = desde; q < hasta; q++) salida[q] = votar(heaps[q - desde], votos);
+        }
+
+        private void seleccionar(double[] consulta, int kk, HeapVecinos heap) {
+            heap.reiniciar(kk);
+            for (int i = 0, base = 0; i < filas; i++, base += dims) {
+                double sum = 0.0;
+                for (int j = 0; j < dims; j++) {
+                    double diff = consulta[j] - caracteristicas.get(base + j);
+                    sum += diff * diff;
+                }
+                if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, i);
+            }
+        }
+    }
+
+    // Misma búsqueda que IndiceKD, con cajas, nodos, orden y filas leídos de las páginas mapeadas
+    private class IndiceMapeado implements BuscadorKNN {
+        private final DoubleBuffer cajas;
+        private final IntBuffer    nodos;
+        private final IntBuffer    orden;
+        private final ThreadLocal<Trabajo> trabajo = ThreadLocal.withInitial(() -> new Trabajo(dims));
+
+        IndiceMapeado() {
+            int bytesCajas = numNodos * 2 * dims * 8;
+            cajas = arbol.slice(0, bytesCajas).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            nodos = arbol.slice(bytesCajas, numNodos * 16).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            orden = arbol.slice(bytesCajas + numNodos * 16, filas * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+
+        @Override public int tamano() { return filas; }
+        @Override public int dims()   { return dims; }
+
+        @Override
+        public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+            if (filas == 0 || k <= 0) return 0;
+            Trabajo t = trabajo.get();
+            t.heap.reiniciar(Math.min(k, filas));
+            buscar(0, consulta, t.heap, t.punto);
+            return t.heap.extraerOrdenados(indices, distancias);
+        }
+
+        @Override
+        public int predecir(double[] consulta, int k) {
+            if (filas == 0 || k <= 0) return -1;
+            Trabajo t = trabajo.get();
+            long t0 = Metricas.inicio();
+            t.heap.reiniciar(Math.min(k, filas));
+            int recorridas = buscar(0, consulta, t.heap, t.punto);
+            long t1 = Metricas.busqueda(t0, recorridas);
+            int clase = votar(t.heap, t.votos(numClases));
+            Metricas.latencia(Metricas.VOTACION, t1);
+            return clase;
+        }
+
+        private int buscar(int nodo, double[] consulta, HeapVecinos heap, double[] punto) {
+            int a = nodos.get(nodo * 4 + 2), b = nodos.get(nodo * 4 + 3);
+            if (a < 0) {
+                int desde = nodos.get(nodo * 4), hasta = nodos.get(nodo * 4 + 1);
+                for (int p = desde; p < hasta; p++) {
+                    int fila = orden.get(p);
+                    caracteristicas.get(fila * dims, punto);
+                    double sum = 0.0;
+                    for (int j = 0; j < dims; j++) {
+                        double diff = consulta[j] - punto[j];
+                        sum += diff * diff;
+                    }
+                    heap.ofrecer(sum, fila);
+                }
+                return hasta - desde;
+            }
+
+            double cotaA = distanciaCaja(a, consulta);
+            double cotaB = distanciaCaja(b, consulta);
+            if (cotaB < cotaA) {
+                int tmp = a; a = b; b = tmp;
+                double tmpCota = cotaA; cotaA = cotaB; cotaB = tmpCota;
+            }
+
+            int recorridas = 0;
+            if (!heap.lleno() || cotaA <= heap.peorDistancia()) recorridas += buscar(a, consulta, heap, punto);
+            if (!heap.lleno() || cotaB <= heap.peorDistancia()) recorridas += buscar(b, consulta, heap, punto);
+            return recorridas;
+        }
+
+        private double distanciaCaja(int nodo, double[] consulta) {
+            int baseMin = nodo * 2 * dims, baseMax = baseMin + dims;
+            double sum = 0.0;
+            for (int j = 0; j < dims; j++) {
+                double q = consulta[j], diff;
+                double min = cajas.get(baseMin + j), max = cajas.get(baseMax + j);
+                if      (q < min) diff = min - q;
+                else if (q > max) diff = q - max;
+                else continue;
+                sum += diff * diff;
+            }
+            return sum;
+        }
+    }
+
+    // Buffers por hilo del árbol mapeado: además del heap, la fila que se está comparando
+    private static class Trabajo extends MotorKNN.Trabajo {
+        final double[] punto;
+        Trabajo(int dims) { this.punto = new double[dims]; }
+    }
+
+    // =========================================================
+    // CONVERSOR DESDE LA SERIALIZACIÓN JAVA
+    // =========================================================
+
+    /**
+     * Convierte un modelo guardado con ObjectOutputStream (ModeloSerializado,
+     * p. ej. "stressprediction.onnx") al formato binario.
+     *
+     *   java backend.ModeloBinario stressprediction.onnx stressprediction.knnm
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Uso: java backend.ModeloBinario <modelo serializado> <salida .knnm>");
+            System.exit(2);
+        }
+
+        Modelo.ModeloSerializado e;
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(args[0]))) {
+            e = (Modelo.ModeloSerializado) ois.readObject();
+        }
+
+        double[] rangos = {
+            e.minAge, e.maxAge, e.minPhone, e.maxPhone, e.minSocial, e.maxSocial, e.minProd, e.maxProd,
+            e.minSleep, e.maxSleep, e.minApp, e.maxApp, e.minCaff, e.maxCaff, e.minScreen, e.maxScreen
+        };
+        escribir(args[1], e.trainSet, rangos, e.genderMap, e.occupationMap, e.deviceMap);
+        System.out.println("Modelo convertido: " + e.trainSet.size() + " filas -> " + args[1]);
+    }
+}
@@ -0,0 +1,190 @@
+package backend;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instantánea inmutable de un modelo KNN listo para predecir: parámetros de
+ * normalización, filas de entrenamiento y el buscador ya construido.
+ *
+ * Todos los campos son finales y el buscador se construye en el constructor,
+ * así que una instancia publicada (ver ServicioInferencia) puede usarse desde
+ * cualquier número de hilos sin bloqueos. Cambiar de modelo es crear otra
+ * instancia, nunca modificar esta.
+ *
+ * Las filas de un modelo .knnm son una vista de las páginas mapeadas; el mapeo
+ * vive mientras alguna instancia lo referencie, de modo que las predicciones
+ * en curso sobre un modelo sustituido terminan sin problemas.
+ */
+public final class ModeloKNN {
+
+    // Etiquetas legibles para las 3 clases
+    private static final String[] CLASE_NOMBRE = {"Bajo (Relax)", "Medio (Alerta)", "Alto (Peligro/Burnout)"};
+
+    private final Preprocesamiento preprocesamiento;
+    private final List<double[]>   filas;
+    private final String           modoBusqueda;
+    private final BuscadorKNN      buscador;
+
+    /**
+     * @param filas        filas normalizadas (características + clase); no deben
+     *                     modificarse después de crear el modelo
+     * @param modoBusqueda "kd", "bruta", "simd", "q8" o "q16"
+     */
+    public ModeloKNN(Preprocesamiento preprocesamiento, List<double[]> filas, String modoBusqueda) {
+        this.preprocesamiento = preprocesamiento;
+        this.filas        = instantanea(filas);
+        this.modoBusqueda = modoBusqueda;
+        this.buscador     = crearBuscador(this.filas, modoBusqueda);
+    }
+
+    // Filas y buscador ya construidos (ver ActualizadorModelo): ni se copian ni se reconstruye el índice
+    ModeloKNN(Preprocesamiento preprocesamiento, List<double[]> filas, String modoBusqueda, BuscadorKNN buscador) {
+        this.preprocesamiento = preprocesamiento;
+        this.filas            = filas;
+        this.modoBusqueda     = modoBusqueda;
+        this.buscador         = buscador;
+    }
+
+    /** Mismo preprocesamiento y modo de búsqueda sobre otras filas (p. ej. prototipos). */
+    public ModeloKNN conFilas(List<double[]> otrasFilas) {
+        return new ModeloKNN(preprocesamiento, otrasFilas, modoBusqueda);
+    }
+
+    /**
+     * Mismo modelo con las filas idénticas (o de la misma celda, con tolerancia
+     * > 0) agrupadas; ver ConjuntoCompacto. Se guarda y exporta compactado.
+     */
+    public ModeloKNN compactado(double tolerancia) {
+        return conFilas(ConjuntoCompacto.compactar(filas, tolerancia).filas());
+    }
+
+    /**
+     * Conjunto compactado detrás de las filas, o null si el modelo no está
+     * compactado. Las filas añadidas a un modelo compactado y aún sin consolidar
+     * (ver ActualizadorModelo) se agrupan aquí con la misma tolerancia.
+     */
+    public ConjuntoCompacto compacto() {
+        double pendiente = ActualizadorModelo.toleranciaPendiente(filas);
+        return Double.isNaN(pendiente) ? ConjuntoCompacto.origen(filas) : ConjuntoCompacto.compactar(filas, pendiente);
+    }
+
+    // Copia de solo lectura de la lista; las vistas mapeadas, fuera del heap y
+    // compactadas ya son de solo lectura y deben conservarse (ver origen)
+    static List<double[]> instantanea(List<double[]> filas) {
+        return ModeloBinario.origen(filas) != null || AlmacenFueraHeap.origen(filas) != null
+                || ConjuntoCompacto.origen(filas) != null
+                ? filas : Collections.unmodifiableList(new ArrayList<>(filas));
+    }
+
+    static BuscadorKNN crearBuscador(List<double[]> filas, String modo) {
+        // Filas compactadas: búsqueda ponderada sobre los representantes
+        ConjuntoCompacto compacto = ConjuntoCompacto.origen(filas);
+        if (compacto != null) return compacto.buscador(modo);
+        // Fuera del heap solo se busca sobre los segmentos: los demás modos copiarían las filas al heap
+        AlmacenFueraHeap almacen = AlmacenFueraHeap.origen(filas);
+        if (almacen != null) {
+            if (!"bruta".equals(modo)) {
+                System.err.println("Aviso: la búsqueda '" + modo + "' no está disponible con las filas fuera del heap;"
+                        + " se usa fuerza bruta sobre los segmentos (-Dknn.busqueda=bruta).");
+            }
+            return almacen.motor();
+        }
+        if ("q8".equals(modo) || "q16".equals(modo)) {
+            // Códigos uint8/uint16; reordenado exacto salvo -Dknn.cuantizado.reordenar=false
+            return new MotorCuantizado(filas, Integer.parseInt(modo.substring(1)),
+                    !"false".equals(System.getProperty("knn.cuantizado.reordenar")));
+        }
+        ModeloBinario mapeado = ModeloBinario.origen(filas);
+        if ("bruta".equals(modo)) {
+            // Con un .knnm la fuerza bruta recorre directamente sus páginas
+            return mapeado != null ? mapeado.motor() : MotorKNN.desdeLista(filas);
+        }
+        // Un .knnm con el árbol guardado se busca sobre sus páginas, sin copia ni reconstrucción
+        BuscadorKNN arbol = mapeado != null && "kd".equals(modo) ? mapeado.indice() : null;
+        if (arbol != null) return arbol;
+        MotorKNN motor = mapeado != null ? mapeado.copiarAMotor() : MotorKNN.desdeLista(filas);
+        return "simd".equals(modo) ? new MotorVectorial(motor, false) : new IndiceKD(motor);
+    }
+
+    // =========================================================
+    // PREDICCIÓN
+    // =========================================================
+
+    public int predecir(double[] vector, int k) {
+        return buscador.predecir(vector, k);
+    }
+
+    public int predecirNuevoUsuario(int age, String gender, String occupation, String deviceType,
+                                    double dailyPhoneHours, double socialMediaHours, double workProductivityScore,
+                                    double sleepHours, int appUsageCount, double caffeineIntakeCups,
+                                    double weekendScreenTimeHours, int k) {
+        double[] vector = preprocesamiento.vectorizar(age, gender, occupation, deviceType,
+                dailyPhoneHours, socialMediaHours, workProductivityScore, sleepHours,
+                appUsageCount, caffeineIntakeCups, weekendScreenTimeHours);
+        return buscador.predecir(vector, k);
+    }
+
+    public static String nombreClase(int clase) {
+        return CLASE_NOMBRE[clase];
+    }
+
+    // =========================================================
+    // ACCESO
+    // =========================================================
+
+    public Preprocesamiento preprocesamiento() { return preprocesamiento; }
+    public List<double[]>   filas()            { return filas; }
+    public BuscadorKNN      buscador()         { return buscador; }
+    public String           modoBusqueda()     { return modoBusqueda; }
+    public boolean          vacio()            { return filas.isEmpty(); }
+
+    // =========================================================
+    // PERSISTENCIA Y EXPORTACIÓN
+    // =========================================================
+
+    public void guardar(String ruta) throws IOException {
+        ModeloBinario.escribir(ruta, filas, preprocesamiento.rangos(), preprocesamiento.genderMap(),
+                preprocesamiento.occupationMap(), preprocesamiento.deviceMap(), compacto());
+    }
+
+    public void exportarJSON(String ruta) throws IOException {
+        ExportadorWeb.exportarJSON(ruta, filas, preprocesamiento.rangos(), preprocesamiento.genderMap(),
+                preprocesamiento.occupationMap(), preprocesamiento.deviceMap(), compacto());
+    }
+
+    public void exportarCompacto(String ruta, int bits) throws IOException {
+        ExportadorWeb.exportarCompacto(ruta, filas, preprocesamiento.rangos(), preprocesamiento.genderMap(),
+                preprocesamiento.occupationMap(), preprocesamiento.deviceMap(), bits, compacto());
+    }
+
+    /**
+     * Lee un modelo .knnm (mapeado en memoria) o, por compatibilidad, uno
+     * guardado con la serialización Java anterior.
+     */
+    public static ModeloKNN cargar(String ruta, String modoBusqueda) throws IOException {
+        if (ModeloBinario.esBinario(ruta)) {
+            ModeloBinario modelo = ModeloBinario.abrir(ruta);
+            Preprocesamiento p = new Preprocesamiento(
+                    modelo.genderMap, modelo.occupationMap, modelo.deviceMap, modelo.rangos);
+            ConjuntoCompacto compacto = modelo.compacto();
+            return new ModeloKNN(p, compacto != null ? compacto.filas() : modelo.filas(), modoBusqueda);
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ruta))) {
+            Modelo.ModeloSerializado e = (Modelo.ModeloSerializado) ois.readObject();
+            double[] rangos = {
+                e.minAge, e.maxAge, e.minPhone, e.maxPhone, e.minSocial, e.maxSocial, e.minProd, e.maxProd,
+                e.minSleep, e.maxSleep, e.minApp, e.maxApp, e.minCaff, e.maxCaff, e.minScreen, e.maxScreen
+            };
+            Preprocesamiento p = new Preprocesamiento(e.genderMap, e.occupationMap, e.deviceMap, rangos);
+            return new ModeloKNN(p, e.trainSet, modoBusqueda);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Formato de modelo desconocido: " + ruta, e);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Búsqueda por fuerza bruta sobre las características cuantizadas a uint8 o
+ * uint16 (mismo redondeo que la exportación compacta: v * (2^bits - 1)).
+ *
+ * Las distancias se calculan en enteros directamente sobre los códigos, con la
+ * consulta cuantizada a la misma escala, así que el recorrido lee 1 o 2 bytes
+ * por celda en lugar de 8. Los códigos se guardan por columnas y se recorren
+ * en bloques de filas, sin dependencias entre filas en el bucle interno. Al
+ * cuantizar se mide el error máximo de cada columna; junto con el error de la
+ * consulta, acota por e la diferencia entre la distancia aproximada y la real
+ * de cualquier fila.
+ *
+ * Con reordenado (por defecto) el resultado es exacto: si r es la peor
+ * distancia aproximada de los k elegidos, la k-ésima distancia real es como
+ * mucho r + e, y toda fila de los k vecinos reales tiene distancia aproximada
+ * de como mucho r + 2e. Esas candidatas se comparan en precisión completa
+ * (las páginas mapeadas de un .knnm o, si no, una copia plana de las
+ * características, que cuenta en bytesPorFila) con el mismo orden
+ * (distancia², índice) que MotorKNN, de modo que vecinos y predicciones
+ * coinciden con predictKNN. Sin reordenado se vota con los k aproximados.
+ *
+ * El ahorro es de memoria, no de tiempo: con el modelo en caché el recorrido
+ * cuesta lo mismo que el de MotorKNN. Sin .knnm el reordenado necesita la
+ * copia en precisión completa y ocupa más que MotorKNN; el modo compacto de
+ * verdad es q8/q16 sobre un modelo mapeado.
+ */
+public class MotorCuantizado implements BuscadorKNN {
+
+    private final int      bits;
+    private final int      niveles;
+    private final int      dims;
+    private final int      n;
+    private final int[]    etiquetas;
+    private final int      numClases;
+
+    // Filas por bloque del recorrido (sumas parciales del bloque en L1)
+    private static final int FILAS_BLOQUE = 256;
+
+    // Solo uno de los dos está en uso según los bits; por columnas: celda (i, j) en j*n + i
+    private final byte[]   codigos8;
+    private final short[]  codigos16;
+
+    // Norma del error de cuantización (en unidades de código) y si se reordena en precisión completa
+    private final double   error;
+    private final boolean  reordenar;
+
+    // Precisión completa para el reordenado: el modelo mapeado o, si no, las características en plano
+    private final ModeloBinario mapeado;
+    private final double[]      exactas;
+
+    private final ThreadLocal<Trabajo> trabajo = ThreadLocal.withInitial(Trabajo::new);
+
+    /**
+     * @param filas     filas del modelo (características + clase); con reordenado
+     *                  y sin modelo mapeado se copian en plano, no se conservan
+     * @param bits      8 o 16
+     * @param reordenar true para resultados exactos
+     */
+    public MotorCuantizado(List<double[]> filas, int bits, boolean reordenar) {
+        if (bits != 8 && bits != 16) throw new IllegalArgumentException("bits debe ser 8 o 16: " + bits);
+        this.bits      = bits;
+        this.niveles   = (1 << bits) - 1;
+        this.n         = filas.size();
+        this.dims      = n == 0 ? 0 : filas.get(0).length - 1;
+        this.reordenar = reordenar;
+        this.mapeado   = reordenar ? ModeloBinario.origen(filas) : null;
+        this.exactas   = reordenar && mapeado == null ? new double[n * dims] : null;
+
+        this.codigos8  = bits == 8  ? new byte[n * dims]  : null;
+        this.codigos16 = bits == 16 ? new short[n * dims] : null;
+        this.etiquetas = new int[n];
+
+        double[] errorColumna = new double[dims];
+        for (int i = 0; i < n; i++) {
+            double[] fila = filas.get(i);
+            if (exactas != null) System.arraycopy(fila, 0, exactas, i * dims, dims);
+            for (int j = 0; j < dims; j++) {
+                int c = ExportadorWeb.cuantizar(fila[j], niveles);
+                if (bits == 8) codigos8[j * n + i]  = (byte) c;
+                else           codigos16[j * n + i] = (short) c;
+                errorColumna[j] = Math.max(errorColumna[j], Math.abs(fila[j] * niveles - c));
+            }
+            etiquetas[i] = (int) fila[dims];
+        }
+
+        double suma = 0.0;
+        for (double e : errorColumna) suma += e * e;
+        this.error     = Math.sqrt(suma);
+        this.numClases = MotorKNN.contarClases(etiquetas);
+    }
+
+    @Override public int tamano() { return n; }
+    @Override public int dims()   { return dims; }
+    public int     bits()         { return bits; }
+    public boolean exacto()       { return reordenar; }
+
+    /** Cota del error de distancia (euclídea, en unidades normalizadas) de cualquier fila. */
+    public double errorMaximo() { return error / niveles; }
+
+    /** Bytes por fila que lee el recorrido: códigos y etiqueta. */
+    public int bytesRecorridoPorFila() { return dims * (bits / 8) + Integer.BYTES; }
+
+    /**
+     * Bytes por fila en el heap: los del recorrido más, si se reordena sin
+     * modelo mapeado, la copia en precisión completa (dims doubles).
+     */
+    public int bytesPorFila() {
+        return bytesRecorridoPorFila() + (exactas != null ? dims * Double.BYTES : 0);
+    }
+
+    // =========================================================
+    // BÚSQUEDA Y PREDICCIÓN
+    // =========================================================
+
+    @Override
+    public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+        if (n == 0 || k <= 0) return 0;
+        Trabajo t = trabajo.get();
+        HeapVecinos heap = seleccionar(consulta, Math.min(k, n), t);
+        int tam = heap.extraerOrdenados(indices, distancias);
+        // Sin reordenado las distancias son las aproximadas, devueltas en unidades normalizadas
+        if (!reordenar && distancias != null) {
+            double escala = (double) niveles * niveles;
+            for (int i = 0; i < tam; i++) distancias[i] /= escala;
+        }
+        return tam;
+    }
+
+    @Override
+    public int predecir(double[] consulta, int k) {
+        if (n == 0 || k <= 0) return -1;
+        Trabajo t = trabajo.get();
+        long t0 = Metricas.inicio();
+        HeapVecinos heap = seleccionar(consulta, Math.min(k, n), t);
+        long t1 = Metricas.busqueda(t0, n);
+        int clase = MotorKNN.votar(etiquetas, heap.idx, heap.tam, t.votos(numClases));
+        Metricas.latencia(Metricas.VOTACION, t1);
+        return clase;
+    }
+
+    /** Filas reordenadas en precisión completa en la última búsqueda de este hilo. */
+    public int ultimasCandidatas() { return trabajo.get().ultimas; }
+
+    // Recorrido sobre los códigos y, si corresponde, reordenado de las candidatas
+    private HeapVecinos seleccionar(double[] consulta, int kk, Trabajo t) {
+        // La consulta también se cuantiza (sin recortar a [0, 1] salvo valores extremos)
+        // para operar en enteros; su error se suma a la cota de las filas
+        int[] codigo = t.consulta(dims);
+        double suma = 0.0;
+        for (int j = 0; j < dims; j++) {
+            double escalado = Math.max(-niveles, Math.min(2.0 * niveles, consulta[j] * niveles));
+            codigo[j] = (int) Math.round(escalado);
+            double e = consulta[j] * niveles - codigo[j];
+            suma += e * e;
+        }
+        double margen = 2.0 * (error + Math.sqrt(suma));
+
+        HeapVecinos aprox = t.aprox;
+        aprox.reiniciar(kk);
+        t.candidatas = 0;
+        if (bits == 8) recorrer8(codigo, margen, aprox, t);
+        else           recorrer16(codigo, margen, aprox, t);
+        if (!reordenar) return aprox;
+
+        // Reordenado: solo las candidatas dentro de la cota final, en orden de fila
+        HeapVecinos exacto = t.heap;
+        exacto.reiniciar(kk);
+        double cotaFinal = cota(aprox.peorDistancia(), margen);
+        int reordenadas = 0;
+        for (int c = 0; c < t.candidatas; c++) {
+            if (t.distCand[c] > cotaFinal) continue;
+            int i = t.idxCand[c];
+            double d = distanciaExacta(consulta, i);
+            reordenadas++;
+            if (!exacto.lleno() || d < exacto.peorDistancia()) exacto.ofrecer(d, i);
+        }
+        t.ultimas = reordenadas;
+        return exacto;
+    }
+
+    // Un bucle por ancho de código para que el compilador JIT no tenga que separarlos.
+    // Cada bloque acumula columna a columna y después ofrece sus filas en orden creciente
+    private void recorrer8(int[] codigo, double margen, HeapVecinos aprox, Trabajo t) {
+        double limite = Double.POSITIVE_INFINITY;
+        int[] sumas = t.sumas8;
+        for (int ini = 0; ini < n; ini += FILAS_BLOQUE) {
+            int tam = Math.min(FILAS_BLOQUE, n - ini);
+            Arrays.fill(sumas, 0, tam, 0);
+            for (int j = 0, col = ini; j < dims; j++, col += n) {
+                int c = codigo[j];
+                // Hasta 11 * 765² con la consulta recortada: cabe en un int
+                for (int r = 0; r < tam; r++) {
+                    int diff = c - (codigos8[col + r] & 0xff);
+                    sumas[r] += diff * diff;
+                }
+            }
+            for (int r = 0; r < tam; r++) {
+                if (sumas[r] <= limite) limite = ofrecer(sumas[r], ini + r, margen, aprox, t, limite);
+            }
+        }
+    }
+
+    private void recorrer16(int[] codigo, double margen, HeapVecinos aprox, Trabajo t) {
+        double limite = Double.POSITIVE_INFINITY;
+        long[] sumas = t.sumas16;
+        for (int ini = 0; ini < n; ini += FILAS_BLOQUE) {
+            int tam = Math.min(FILAS_BLOQUE, n - ini);
+            Arrays.fill(sumas, 0, tam, 0L);
+            for (int j = 0, col = ini; j < dims; j++, col += n) {
+                int c = codigo[j];
+                // El cuadrado no cabe en un int
+                for (int r = 0; r < tam; r++) {
+                    long diff = c - (codigos16[col + r] & 0xffff);
+                    sumas[r] += diff * diff;
+                }
+            }
+            for (int r = 0; r < tam; r++) {
+                if (sumas[r] <= limite) limite = ofrecer(sumas[r], ini + r, margen, aprox, t, limite);
+            }
+        }
+    }
+
+    // Fila dentro del límite: al heap aproximado y, con reordenado, a las candidatas
+    private double ofrecer(double sum, int i, double margen, HeapVecinos aprox, Trabajo t, double limite) {
+        if (!aprox.lleno() || sum < aprox.peorDistancia()) {
+            aprox.ofrecer(sum, i);
+            if (aprox.lleno()) limite = reordenar ? cota(aprox.peorDistancia(), margen) : aprox.peorDistancia();
+        }
+        if (reordenar) t.candidata(i, sum);
+        return limite;
+    }
+
+    // (sqrt(r) + margen)², con holgura para el redondeo de las sumas
+    private static double cota(double r, double margen) {
+        double raiz = Math.sqrt(r) + margen;
+        return raiz * raiz * (1.0 + 1e-9) + 1e-9;
+    }
+
+    // Mismas operaciones y mismo orden que MotorKNN: distancias idénticas bit a bit
+    private double distanciaExacta(double[] consulta, int i) {
+        double sum = 0.0;
+        if (mapeado != null) {
+            for (int j = 0; j < dims; j++) {
+                double diff = consulta[j] - mapeado.valor(i, j);
+                sum += diff * diff;
+            }
+        } else {
+            for (int j = 0, base = i * dims; j < dims; j++) {
+                double diff = consulta[j] - exactas[base + j];
+                sum += diff * diff;
+            }
+        }
+        return sum;
+    }
+
+    private static class Trabajo extends MotorKNN.Trabajo {
+        final HeapVecinos aprox = new HeapVecinos();
+        final int[]    sumas8   = new int[FILAS_BLOQUE];
+        final long[]   sumas16  = new long[FILAS_BLOQUE];
+        private int[]    consulta = new int[0];
+        int[]    idxCand  = new int[64];
+        double[] distCand = new double[64];
+        int      candidatas;
+        int      ultimas;
+
+        int[] consulta(int dims) {
+            if (consulta.length != dims) consulta = new int[dims];
+            return consulta;
+        }
+
+        void candidata(int i, double d) {
+            if (candidatas == idxCand.length) {
+                idxCand  = Arrays.copyOf(idxCand,  candidatas * 2);
+                distCand = Arrays.copyOf(distCand, candidatas * 2);
+            }
+            idxCand[candidatas]  = i;
+            distCand[candidatas] = d;
+            candidatas++;
+        }
+    }
+
+    // =========================================================
+    // COMPARACIÓN DE MODOS
+    // =========================================================
+
+    /**
+     * Memoria por fila, consultas por segundo y paridad con MotorKNN de cada
+     * modo de almacenamiento, sobre un split 80/20 del CSV:
+     *
+     *   java backend.MotorCuantizado [csv] [k] [máximo de consultas]
+     */
+    public static void main(String[] args) {
+        String ruta = args.length > 0 ? args[0] : "backend/Stress level classification.csv";
+        int k       = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        int maximo  = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+
+        Datos datos = new Datos();
+        datos.cargarDatosMapeado(ruta);
+        List<double[]> normalizados = Modelo.normalizarDatos(datos.getRegistros());
+        if (normalizados.isEmpty()) return;
+        Collections.shuffle(normalizados, new Random(42));
+        int corte = (int) (normalizados.size() * 0.8);
+        List<double[]> entrenamiento = normalizados.subList(0, corte);
+        List<double[]> consultas     = normalizados.subList(corte, (int) Math.min(normalizados.size(), (long) corte + maximo));
+
+        MotorKNN referencia = MotorKNN.desdeLista(entrenamiento);
+        int dims = referencia.dims();
+        int[] esperadas = new int[consultas.size()];
+        for (int i = 0; i < esperadas.length; i++) esperadas[i] = referencia.predecir(consultas.get(i), k);
+
+        // Bytes/fila: todo lo que el buscador mantiene en el heap; Recorrido: lo que lee cada consulta.
+        // Con un .knnm la precisión completa del reordenado está en las páginas mapeadas, fuera del heap.
+        // Lista de double[]: cabecera de arreglo + celdas + referencia (estimación con referencias comprimidas)
+        System.out.printf("%-22s %10s %10s %12s %14s %12s%n", "Modo", "Bytes/fila", "Recorrido", "Consultas/s", "Iguales", "Candidatas");
+        System.out.printf("%-22s %10d %10s %12s %14s %12s%n", "lista double[]", 16 + (dims + 1) * 8 + 4, "-", "-", "-", "-");
+        informar("double (MotorKNN)", dims * 8 + Integer.BYTES, dims * 8 + Integer.BYTES, referencia, consultas, esperadas, k, null);
+
+        for (int bits : new int[]{16, 8}) {
+            for (boolean exacto : new boolean[]{true, false}) {
+                MotorCuantizado motor = new MotorCuantizado(entrenamiento, bits, exacto);
+                informar("uint" + bits + (exacto ? " + reordenado" : " aproximado"), motor.bytesPorFila(),
+                        motor.bytesRecorridoPorFila(), motor, consultas, esperadas, k, exacto ? motor : null);
+            }
+        }
+    }
+
+    private static void informar(String nombre, int bytesPorFila, int bytesRecorrido, BuscadorKNN buscador,
+                                 List<double[]> consultas, int[] esperadas, int k, MotorCuantizado conCandidatas) {
+        // Calentamiento y medición sobre las mismas consultas
+        for (double[] q : consultas) buscador.predecir(q, k);
+        int iguales = 0;
+        long candidatas = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < esperadas.length; i++) {
+            if (buscador.predecir(consultas.get(i), k) == esperadas[i]) iguales++;
+            if (conCandidatas != null) candidatas += conCandidatas.ultimasCandidatas();
+        }
+        long duracion = System.nanoTime() - inicio;
+        System.out.printf("%-22s %10d %10d %12.0f %8d/%-5d %12s%n", nombre, bytesPorFila, bytesRecorrido,
+                esperadas.length / (duracion / 1e9), iguales, esperadas.length,
+                conCandidatas != null ? String.format("%.1f", (double) candidatas / esperadas.length) : "-");
+    }
+}
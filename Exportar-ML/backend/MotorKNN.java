@@ -0,0 +1,192 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Motor de búsqueda de vecinos sobre un conjunto de entrenamiento almacenado
+ * en un único arreglo plano de primitivos (fila i = posiciones [i*dims, (i+1)*dims)).
+ *
+ * Selecciona los k más cercanos con un max-heap acotado sobre distancias al
+ * cuadrado (sin sqrt, sin objetos por fila) y vota en un int[] de conteos.
+ * El desempate es el mismo que el de la ordenación estable original: a igual
+ * distancia gana la fila con menor índice, y a igual número de votos gana la
+ * clase de menor número.
+ */
+public class MotorKNN implements BuscadorKNN {
+
+    private final double[] caracteristicas;
+    private final int[]    etiquetas;
+    private final int      dims;
+    private final int      n;
+    private final int      numClases;
+
+    // Filas por tramo en predecirVarios (unos 32 KB con 11 dimensiones)
+    private static final int FILAS_TRAMO = 384;
+
+    // Buffers de trabajo por hilo (heap de tamaño k y conteo de votos)
+    private final ThreadLocal<Trabajo> trabajo = ThreadLocal.withInitial(Trabajo::new);
+
+    public MotorKNN(double[] caracteristicas, int[] etiquetas, int dims) {
+        this.caracteristicas = caracteristicas;
+        this.etiquetas       = etiquetas;
+        this.dims            = dims;
+        this.n               = etiquetas.length;
+        this.numClases       = contarClases(etiquetas);
+    }
+
+    /**
+     * Construye el motor a partir de la representación clásica del modelo:
+     * cada double[] contiene las características y, en la última posición, la clase.
+     */
+    public static MotorKNN desdeLista(List<double[]> trainSet) {
+        int filas = trainSet.size();
+        int dims  = filas == 0 ? 0 : trainSet.get(0).length - 1;
+
+        double[] plano  = new double[filas * dims];
+        int[]    clases = new int[filas];
+        for (int i = 0; i < filas; i++) {
+            double[] fila = trainSet.get(i);
+            System.arraycopy(fila, 0, plano, i * dims, dims);
+            clases[i] = (int) fila[dims];
+        }
+        return new MotorKNN(plano, clases, dims);
+    }
+
+    @Override public int tamano() { return n; }
+    @Override public int dims()   { return dims; }
+    public int numClases()        { return numClases; }
+
+    double[] caracteristicas() { return caracteristicas; }
+    int[]    etiquetas()       { return etiquetas; }
+
+    // =========================================================
+    // BÚSQUEDA Y PREDICCIÓN
+    // =========================================================
+
+    @Override
+    public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+        if (n == 0 || k <= 0) return 0;
+        HeapVecinos heap = trabajo.get().heap;
+        seleccionar(consulta, Math.min(k, n), heap);
+        return heap.extraerOrdenados(indices, distancias);
+    }
+
+    @Override
+    public int predecir(double[] consulta, int k) {
+        if (n == 0 || k <= 0) return -1;
+
+        Trabajo t = trabajo.get();
+        long t0 = Metricas.inicio();
+        seleccionar(consulta, Math.min(k, n), t.heap);
+        long t1 = Metricas.busqueda(t0, n);
+        int clase = votar(etiquetas, t.heap.idx, t.heap.tam, t.votos(numClases));
+        Metricas.latencia(Metricas.VOTACION, t1);
+        return clase;
+    }
+
+    /**
+     * Una sola pasada sobre el entrenamiento para varias consultas: las filas se
+     * recorren en tramos que caben en caché y cada tramo se compara con todas
+     * las consultas antes de pasar al siguiente. Cada consulta sigue viendo las
+     * filas en orden creciente, así que los vecinos son los mismos que con predecir.
+     */
+    @Override
+    public boolean prediceEnLote() { return true; }
+
+    @Override
+    public void predecirVarios(double[][] consultas, int desde, int hasta, int k, int[] salida) {
+        if (n == 0 || k <= 0) {
+            for (int q = desde; q < hasta; q++) salida[q] = -1;
+            return;
+        }
+        int kk = Math.min(k, n);
+        Trabajo t = trabajo.get();
+        HeapVecinos[] heaps = t.heaps(hasta - desde);
+        for (HeapVecinos heap : heaps) heap.reiniciar(kk);
+
+        for (int ini = 0; ini < n; ini += FILAS_TRAMO) {
+            int fin = Math.min(n, ini + FILAS_TRAMO);
+            for (int q = desde; q < hasta; q++) {
+                double[] consulta = consultas[q];
+                HeapVecinos heap = heaps[q - desde];
+                for (int i = ini, base = ini * dims; i < fin; i++, base += dims) {
+                    double sum = 0.0;
+                    for (int j = 0; j < dims; j++) {
+                        double diff = consulta[j] - caracteristicas[base + j];
+                        sum += diff * diff;
+                    }
+                    if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, i);
+                }
+            }
+        }
+
+        Metricas.filasRecorridas((long) n * (hasta - desde));
+        int[] votos = t.votos(numClases);
+        for (int q = desde; q < hasta; q++) {
+            HeapVecinos heap = heaps[q - desde];
+            salida[q] = votar(etiquetas, heap.idx, heap.tam, votos);
+        }
+    }
+
+    // Recorre todas las filas quedándose con las kk más cercanas
+    private void seleccionar(double[] consulta, int kk, HeapVecinos heap) {
+        heap.reiniciar(kk);
+        for (int i = 0, base = 0; i < n; i++, base += dims) {
+            double sum = 0.0;
+            for (int j = 0; j < dims; j++) {
+                double diff = consulta[j] - caracteristicas[base + j];
+                sum += diff * diff;
+            }
+            // Las filas llegan en orden creciente de índice: a igual distancia nunca reemplazan
+            if (!heap.lleno() || sum < heap.peorDistancia()) heap.ofrecer(sum, i);
+        }
+    }
+
+    /** Voto por mayoría; a igual número de votos gana la clase de menor número. */
+    static int votar(int[] etiquetas, int[] indices, int tam, int[] votos) {
+        Arrays.fill(votos, 0);
+        for (int i = 0; i < tam; i++) votos[etiquetas[indices[i]]]++;
+        return ganadora(votos);
+    }
+
+    /** Clase con más votos (la menor si empatan), o -1 si no hay votos. */
+    static int ganadora(int[] votos) {
+        int ganadora = -1, maxVotos = 0;
+        for (int c = 0; c < votos.length; c++) {
+            if (votos[c] > maxVotos) {
+                maxVotos = votos[c];
+                ganadora = c;
+            }
+        }
+        return ganadora;
+    }
+
+    static int contarClases(int[] etiquetas) {
+        int maxClase = 0;
+        for (int c : etiquetas) maxClase = Math.max(maxClase, c);
+        return maxClase + 1;
+    }
+
+    // Buffers reutilizables para no asignar memoria por consulta
+    static class Trabajo {
+        final HeapVecinos heap = new HeapVecinos();
+        private int[] votos = new int[0];
+        private HeapVecinos[] heaps = new HeapVecinos[0];
+
+        int[] votos(int clases) {
+            if (votos.length != clases) votos = new int[clases];
+            return votos;
+        }
+
+        // Un heap por consulta del lote; se conservan entre llamadas
+        HeapVecinos[] heaps(int cantidad) {
+            if (heaps.length != cantidad) {
+                HeapVecinos[] nuevos = new HeapVecinos[cantidad];
+                for (int i = 0; i < cantidad; i++) nuevos[i] = i < heaps.length ? heaps[i] : new HeapVecinos();
+                heaps = nuevos;
+            }
+            return heaps;
+        }
+    }
+}
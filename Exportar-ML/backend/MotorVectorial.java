@@ -0,0 +1,133 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Búsqueda por fuerza bruta usando el núcleo de distancias por bloques
+ * (SIMD si está disponible). Mismo heap y mismo desempate que MotorKNN.
+ */
+public class MotorVectorial implements BuscadorKNN {
+
+    private final KernelDistancia kernel;
+    private final int[]           etiquetas;
+    private final int             n;
+    private final int             dims;
+    private final int             numClases;
+
+    private final ThreadLocal<Trabajo> trabajo;
+
+    public MotorVectorial(MotorKNN motor, boolean float32) {
+        this(motor, KernelDistancia.crear(motor.caracteristicas(), motor.tamano(), motor.dims(), float32));
+    }
+
+    public MotorVectorial(MotorKNN motor, KernelDistancia kernel) {
+        this.kernel    = kernel;
+        this.etiquetas = motor.etiquetas();
+        this.n         = motor.tamano();
+        this.dims      = motor.dims();
+        this.numClases = motor.numClases();
+        this.trabajo   = ThreadLocal.withInitial(() -> new Trabajo(kernel.ancho()));
+    }
+
+    public KernelDistancia kernel() { return kernel; }
+
+    @Override public int tamano() { return n; }
+    @Override public int dims()   { return dims; }
+
+    @Override
+    public int vecinos(double[] consulta, int k, int[] indices, double[] distancias) {
+        if (n == 0 || k <= 0) return 0;
+        Trabajo t = trabajo.get();
+        seleccionar(consulta, Math.min(k, n), t);
+        return t.heap.extraerOrdenados(indices, distancias);
+    }
+
+    @Override
+    public int predecir(double[] consulta, int k) {
+        if (n == 0 || k <= 0) return -1;
+        Trabajo t = trabajo.get();
+        long t0 = Metricas.inicio();
+        seleccionar(consulta, Math.min(k, n), t);
+        long t1 = Metricas.busqueda(t0, n);
+        int clase = MotorKNN.votar(etiquetas, t.heap.idx, t.heap.tam, t.votos(numClases));
+        Metricas.latencia(Metricas.VOTACION, t1);
+        return clase;
+    }
+
+    private void seleccionar(double[] consulta, int kk, Trabajo t) {
+        HeapVecinos heap = t.heap;
+        double[] bloque  = t.bloque;
+        int ancho        = kernel.ancho();
+
+        heap.reiniciar(kk);
+        for (int b = 0, fila = 0; b < kernel.numBloques(); b++) {
+            kernel.distancias(consulta, b, bloque);
+            int limite = Math.min(ancho, n - fila);
+            for (int c = 0; c < limite; c++, fila++) {
+                double d = bloque[c];
+                if (!heap.lleno() || d < heap.peorDistancia()) heap.ofrecer(d, fila);
+            }
+        }
+    }
+
+    // =========================================================
+    // COMPROBACIÓN DE PARIDAD
+    // =========================================================
+
+    /**
+     * Compara el ranking de vecinos del núcleo por bloques con el de MotorKNN
+     * sobre un split 80/20 del CSV. En doble precisión debe coincidir siempre;
+     * en float32 solo se informa el porcentaje de rankings y predicciones iguales.
+     *
+     *   java --add-modules jdk.incubator.vector backend.MotorVectorial [csv] [k]
+     */
+    public static void main(String[] args) {
+        String ruta = args.length > 0 ? args[0] : "backend/Stress level classification.csv";
+        int k       = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+
+        Datos datos = new Datos();
+        datos.cargarDatos(ruta);
+        List<double[]> normalizados = Modelo.normalizarDatos(datos.getRegistros());
+        Collections.shuffle(normalizados, new Random(42));
+        int corte = (int) (normalizados.size() * 0.8);
+
+        MotorKNN referencia = MotorKNN.desdeLista(normalizados.subList(0, corte));
+        List<double[]> consultas = normalizados.subList(corte, normalizados.size());
+
+        boolean ok = true;
+        for (boolean float32 : new boolean[]{false, true}) {
+            MotorVectorial motor = new MotorVectorial(referencia, float32);
+            int[] idxRef = new int[k], idx = new int[k];
+            double[] distRef = new double[k], dist = new double[k];
+            int rankingsIguales = 0, prediccionesIguales = 0;
+
+            for (double[] q : consultas) {
+                referencia.vecinos(q, k, idxRef, distRef);
+                motor.vecinos(q, k, idx, dist);
+                if (Arrays.equals(idxRef, idx) && (float32 || Arrays.equals(distRef, dist))) {
+                    rankingsIguales++;
+                }
+                if (referencia.predecir(q, k) == motor.predecir(q, k)) prediccionesIguales++;
+            }
+
+            System.out.printf("%s (%s, ancho=%d): rankings iguales %d/%d, predicciones iguales %d/%d%n",
+                    float32 ? "float32" : "float64",
+                    motor.kernel().vectorial() ? "SIMD" : "escalar", motor.kernel().ancho(),
+                    rankingsIguales, consultas.size(), prediccionesIguales, consultas.size());
+            if (!float32 && rankingsIguales != consultas.size()) ok = false;
+        }
+
+        if (!ok) {
+            System.err.println("ERROR: el ranking en doble precisión no coincide con MotorKNN");
+            System.exit(1);
+        }
+    }
+
+    private static class Trabajo extends MotorKNN.Trabajo {
+        final double[] bloque;
+        Trabajo(int ancho) { bloque = new double[ancho]; }
+    }
+}
@@ -0,0 +1,113 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Proceso trabajador de la búsqueda distribuida: atiende consultas sobre un
+ * fragmento del entrenamiento (un .knnm) en un socket de loopback y devuelve
+ * sus k vecinos locales (distancia², índice local, clase). El coordinador
+ * (ver CoordinadorFragmentos) los mezcla con los de los demás fragmentos.
+ *
+ * Protocolo por conexión, en DataOutputStream (big-endian), petición tras petición:
+ *   petición   int k, int n, int largo, n * largo doubles (las consultas)
+ *   respuesta  por consulta: int tam y tam * (double distancia², int índice, int clase)
+ *
+ * Cada petición se lee entera antes de responder, así que el coordinador puede
+ * enviar el lote completo a todos los fragmentos antes de leer ninguna respuesta.
+ * Al arrancar escribe "PUERTO n" en la salida estándar y termina cuando se
+ * cierra su entrada estándar (el coordinador terminó).
+ *
+ * Uso: java -Dknn.busqueda=kd backend.NodoFragmento fragmento.knnm
+ */
+public class NodoFragmento {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Uso: NodoFragmento <fragmento.knnm>");
+            return;
+        }
+        ModeloKNN modelo = ModeloKNN.cargar(args[0], System.getProperty("knn.busqueda", "kd"));
+
+        ServerSocket servidor = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        vigilarEntrada(System.in);
+        System.out.println("PUERTO " + servidor.getLocalPort());
+        System.out.flush();
+
+        while (true) {
+            Socket socket = servidor.accept();
+            Thread hilo = new Thread(() -> atender(modelo, socket), "knn-fragmento-conexion");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    // Sin coordinador no hay a quién responder: salir en cuanto se cierre la entrada
+    private static void vigilarEntrada(InputStream entrada) {
+        Thread hilo = new Thread(() -> {
+            try {
+                while (entrada.read() >= 0) { }
+            } catch (IOException e) {
+                // Entrada cerrada: igual que fin de archivo
+            }
+            System.exit(0);
+        }, "knn-fragmento-vigia");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private static void atender(ModeloKNN modelo, Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            BuscadorKNN    buscador = modelo.buscador();
+            List<double[]> filas    = modelo.filas();
+            int[]    indices     = new int[0];
+            double[] distancias  = new double[0];
+
+            while (true) {
+                int k;
+                try {
+                    k = in.readInt();
+                } catch (EOFException e) {
+                    return; // el coordinador cerró la conexión
+                }
+                int n     = in.readInt();
+                int largo = in.readInt();
+                double[][] consultas = new double[n][largo];
+                for (double[] consulta : consultas) {
+                    for (int d = 0; d < largo; d++) consulta[d] = in.readDouble();
+                }
+
+                if (indices.length < k) {
+                    indices    = new int[k];
+                    distancias = new double[k];
+                }
+                for (double[] consulta : consultas) {
+                    int tam = buscador.vecinos(consulta, k, indices, distancias);
+                    out.writeInt(tam);
+                    for (int j = 0; j < tam; j++) {
+                        double[] vecino = filas.get(indices[j]);
+                        out.writeDouble(distancias[j]);
+                        out.writeInt(indices[j]);
+                        out.writeInt((int) vecino[vecino.length - 1]);
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
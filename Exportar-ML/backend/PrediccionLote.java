@@ -0,0 +1,89 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Predicción de muchas consultas repartidas entre todos los núcleos.
+ *
+ * Por defecto usa fork-join (pool común o el que se indique); también acepta
+ * cualquier ExecutorService, en cuyo caso divide las consultas en bloques contiguos.
+ * Cada consulta se resuelve con el mismo buscador, así que el resultado es
+ * idéntico al de una ejecución secuencial.
+ */
+public class PrediccionLote {
+
+    // Consultas por tarea hoja: suficiente para amortizar el reparto de trabajo
+    private static final int UMBRAL = 64;
+
+    public static int[] predecir(BuscadorKNN buscador, List<double[]> consultas, int k) {
+        return predecir(buscador, consultas, k, ForkJoinPool.commonPool());
+    }
+
+    public static int[] predecir(BuscadorKNN buscador, List<double[]> consultas, int k, ForkJoinPool pool) {
+        int[] resultado = new int[consultas.size()];
+        if (resultado.length > 0) {
+            pool.invoke(new Tarea(buscador, consultas, k, resultado, 0, resultado.length));
+        }
+        return resultado;
+    }
+
+    public static int[] predecir(BuscadorKNN buscador, List<double[]> consultas, int k,
+                                 ExecutorService ejecutor, int numBloques) {
+        int[] resultado = new int[consultas.size()];
+        int total  = resultado.length;
+        int bloque = Math.max(1, (total + numBloques - 1) / Math.max(numBloques, 1));
+
+        List<Future<?>> pendientes = new ArrayList<>();
+        for (int desde = 0; desde < total; desde += bloque) {
+            int d = desde, h = Math.min(total, desde + bloque);
+            pendientes.add(ejecutor.submit(() -> {
+                for (int i = d; i < h; i++) resultado[i] = buscador.predecir(consultas.get(i), k);
+            }));
+        }
+
+        try {
+            for (Future<?> f : pendientes) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Predicción por lotes interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error en predicción por lotes", e.getCause());
+        }
+        return resultado;
+    }
+
+    private static class Tarea extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BuscadorKNN    buscador;
+        private final List<double[]> consultas;
+        private final int            k;
+        private final int[]          resultado;
+        private final int            desde, hasta;
+
+        Tarea(BuscadorKNN buscador, List<double[]> consultas, int k, int[] resultado, int desde, int hasta) {
+            this.buscador  = buscador;
+            this.consultas = consultas;
+            this.k         = k;
+            this.resultado = resultado;
+            this.desde     = desde;
+            this.hasta     = hasta;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= UMBRAL) {
+                for (int i = desde; i < hasta; i++) resultado[i] = buscador.predecir(consultas.get(i), k);
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new Tarea(buscador, consultas, k, resultado, desde, medio),
+                      new Tarea(buscador, consultas, k, resultado, medio, hasta));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parámetros de normalización ajustados sobre los datos de entrenamiento:
+ * mappings de las variables categóricas y rangos min/max de las numéricas.
+ *
+ * Es inmutable: los mapas se copian y se exponen sin modificación posible y los
+ * rangos solo salen como copia, así que puede compartirse entre hilos sin
+ * sincronizar. Los factores de escala de las categóricas se calculan una vez.
+ *
+ * Orden de los rangos (el del formato binario y del JSON):
+ *   age, phone, social, prod, sleep, app, caff, screen (min y max de cada una)
+ */
+public final class Preprocesamiento {
+
+    public static final int NUM_RANGOS = 16;
+    public static final int DIMS       = 11;
+
+    private final Map<String, Integer> genderMap;
+    private final Map<String, Integer> occupationMap;
+    private final Map<String, Integer> deviceMap;
+    private final double[] rangos;
+
+    // Divisores de los códigos categóricos (máximo código, al menos 1)
+    private final double escalaGender;
+    private final double escalaOcc;
+    private final double escalaDevice;
+
+    public Preprocesamiento(Map<String, Integer> genderMap, Map<String, Integer> occupationMap,
+                            Map<String, Integer> deviceMap, double[] rangos) {
+        if (rangos.length != NUM_RANGOS) {
+            throw new IllegalArgumentException("Se esperaban " + NUM_RANGOS + " rangos: " + rangos.length);
+        }
+        // LinkedHashMap conserva el orden de iteración del mapa original (y por tanto del JSON exportado)
+        this.genderMap     = Collections.unmodifiableMap(new LinkedHashMap<>(genderMap));
+        this.occupationMap = Collections.unmodifiableMap(new LinkedHashMap<>(occupationMap));
+        this.deviceMap     = Collections.unmodifiableMap(new LinkedHashMap<>(deviceMap));
+        this.rangos        = rangos.clone();
+
+        this.escalaGender = Math.max(genderMap.size() - 1, 1);
+        this.escalaOcc    = Math.max(occupationMap.size() - 1, 1);
+        this.escalaDevice = Math.max(deviceMap.size() - 1, 1);
+    }
+
+    /** Calcula rangos y mappings recorriendo los registros una vez. */
+    public static Preprocesamiento ajustar(List<Datos.Registro> registros) {
+        double[] r = rangosVacios();
+        Map<String, Integer> gender     = new HashMap<>();
+        Map<String, Integer> occupation = new HashMap<>();
+        Map<String, Integer> device     = new HashMap<>();
+
+        for (Datos.Registro reg : registros) {
+            ampliar(r, 0,  reg.age);
+            ampliar(r, 2,  reg.dailyPhoneHours);
+            ampliar(r, 4,  reg.socialMediaHours);
+            ampliar(r, 6,  reg.workProductivityScore);
+            ampliar(r, 8,  reg.sleepHours);
+            ampliar(r, 10, reg.appUsageCount);
+            ampliar(r, 12, reg.caffeineIntakeCups);
+            ampliar(r, 14, reg.weekendScreenTimeHours);
+
+            gender.putIfAbsent(reg.gender,         gender.size());
+            occupation.putIfAbsent(reg.occupation, occupation.size());
+            device.putIfAbsent(reg.deviceType,     device.size());
+        }
+        return new Preprocesamiento(gender, occupation, device, r);
+    }
+
+    // Rangos antes de ver ningún valor (el máximo parte de Double.MIN_VALUE, como el código original)
+    static double[] rangosVacios() {
+        double[] r = new double[NUM_RANGOS];
+        for (int i = 0; i < NUM_RANGOS; i += 2) {
+            r[i]     = Double.MAX_VALUE;
+            r[i + 1] = Double.MIN_VALUE;
+        }
+        return r;
+    }
+
+    static void ampliar(double[] r, int i, double v) {
+        r[i]     = Math.min(r[i], v);
+        r[i + 1] = Math.max(r[i + 1], v);
+    }
+
+    // =========================================================
+    // VECTORIZACIÓN
+    // =========================================================
+
+    /** Vector de entrenamiento: 11 características normalizadas + clase (0, 1 o 2). */
+    public double[] vectorizar(Datos.Registro r) {
+        double[] vector = new double[DIMS + 1];
+        vector[0]  = normalizar(r.age,                    rangos[0],  rangos[1]);
+        vector[1]  = genderMap.get(r.gender)         / escalaGender;
+        vector[2]  = occupationMap.get(r.occupation) / escalaOcc;
+        vector[3]  = deviceMap.get(r.deviceType)     / escalaDevice;
+        numericas(vector, r.dailyPhoneHours, r.socialMediaHours, r.workProductivityScore,
+                r.sleepHours, r.appUsageCount, r.caffeineIntakeCups, r.weekendScreenTimeHours);
+
+        vector[11] = clase(r.stressLevel);
+        return vector;
+    }
+
+    /** Target (1-10) -> 3 clases. */
+    public static int clase(int stressLevel) {
+        if      (stressLevel <= 3) return 0; // Bajo
+        else if (stressLevel <= 6) return 1; // Medio
+        else                       return 2; // Alto
+    }
+
+    /** Vector de consulta: las categorías desconocidas cuentan como código 0 y la clase es -1. */
+    public double[] vectorizar(int age, String gender, String occupation, String deviceType,
+                               double dailyPhoneHours, double socialMediaHours, double workProductivityScore,
+                               double sleepHours, int appUsageCount, double caffeineIntakeCups,
+                               double weekendScreenTimeHours) {
+        double[] vector = new double[DIMS + 1];
+        vector[0]  = normalizar(age, rangos[0], rangos[1]);
+        vector[1]  = codigo(genderMap, gender)         / escalaGender;
+        vector[2]  = codigo(occupationMap, occupation) / escalaOcc;
+        vector[3]  = codigo(deviceMap, deviceType)     / escalaDevice;
+        numericas(vector, dailyPhoneHours, socialMediaHours, workProductivityScore,
+                sleepHours, appUsageCount, caffeineIntakeCups, weekendScreenTimeHours);
+        vector[11] = -1;
+        return vector;
+    }
+
+    // Como getOrDefault(valor, 0), contando los valores desconocidos en Metricas
+    private static int codigo(Map<String, Integer> mapa, String valor) {
+        Integer c = mapa.get(valor);
+        if (c == null) {
+            Metricas.categoriaDesconocida();
+            return 0;
+        }
+        return c;
+    }
+
+    private void numericas(double[] vector, double phone, double social, double prod,
+                           double sleep, double app, double caff, double screen) {
+        vector[4]  = normalizar(phone,  rangos[2],  rangos[3]);
+        vector[5]  = normalizar(social, rangos[4],  rangos[5]);
+        vector[6]  = normalizar(prod,   rangos[6],  rangos[7]);
+        vector[7]  = normalizar(sleep,  rangos[8],  rangos[9]);
+        vector[8]  = normalizar(app,    rangos[10], rangos[11]);
+        vector[9]  = normalizar(caff,   rangos[12], rangos[13]);
+        vector[10] = normalizar(screen, rangos[14], rangos[15]);
+    }
+
+    static double normalizar(double val, double min, double max) {
+        if (max == min) return 0.0;
+        return (val - min) / (max - min);
+    }
+
+    // =========================================================
+    // COLUMNAS (actualización incremental)
+    // =========================================================
+
+    /**
+     * Preprocesamiento que además cubre los registros nuevos: las categorías no
+     * vistas reciben el siguiente código y los rangos se amplían. Devuelve this
+     * si no cambia nada.
+     */
+    public Preprocesamiento ampliarCon(List<Datos.Registro> nuevos) {
+        double[] r = rangos.clone();
+        Map<String, Integer> gender     = new LinkedHashMap<>(genderMap);
+        Map<String, Integer> occupation = new LinkedHashMap<>(occupationMap);
+        Map<String, Integer> device     = new LinkedHashMap<>(deviceMap);
+
+        for (Datos.Registro reg : nuevos) {
+            ampliar(r, 0,  reg.age);
+            ampliar(r, 2,  reg.dailyPhoneHours);
+            ampliar(r, 4,  reg.socialMediaHours);
+            ampliar(r, 6,  reg.workProductivityScore);
+            ampliar(r, 8,  reg.sleepHours);
+            ampliar(r, 10, reg.appUsageCount);
+            ampliar(r, 12, reg.caffeineIntakeCups);
+            ampliar(r, 14, reg.weekendScreenTimeHours);
+
+            gender.putIfAbsent(reg.gender,         gender.size());
+            occupation.putIfAbsent(reg.occupation, occupation.size());
+            device.putIfAbsent(reg.deviceType,     device.size());
+        }
+
+        if (Arrays.equals(r, rangos) && gender.size() == genderMap.size()
+                && occupation.size() == occupationMap.size() && device.size() == deviceMap.size()) {
+            return this;
+        }
+        return new Preprocesamiento(gender, occupation, device, r);
+    }
+
+    /** Valores sin normalizar de las 11 columnas (las categóricas como código). */
+    public double[] crudos(Datos.Registro r) {
+        return new double[] {
+            r.age, genderMap.get(r.gender), occupationMap.get(r.occupation), deviceMap.get(r.deviceType),
+            r.dailyPhoneHours, r.socialMediaHours, r.workProductivityScore, r.sleepHours,
+            r.appUsageCount, r.caffeineIntakeCups, r.weekendScreenTimeHours
+        };
+    }
+
+    /** Normaliza el valor crudo de una columna (0..10) con la misma operación que vectorizar. */
+    public double normalizarColumna(int columna, double crudo) {
+        switch (columna) {
+            case 1:  return crudo / escalaGender;
+            case 2:  return crudo / escalaOcc;
+            case 3:  return crudo / escalaDevice;
+            default:
+                int i = indiceRango(columna);
+                return normalizar(crudo, rangos[i], rangos[i + 1]);
+        }
+    }
+
+    /**
+     * Inversa de normalizarColumna, para filas de las que solo se conoce el
+     * vector normalizado. Los códigos categóricos se redondean; los numéricos
+     * pueden diferir del valor original en el redondeo.
+     */
+    public double desnormalizarColumna(int columna, double valor) {
+        switch (columna) {
+            case 1:  return Math.round(valor * escalaGender);
+            case 2:  return Math.round(valor * escalaOcc);
+            case 3:  return Math.round(valor * escalaDevice);
+            default:
+                int i = indiceRango(columna);
+                return rangos[i + 1] == rangos[i] ? rangos[i] : valor * (rangos[i + 1] - rangos[i]) + rangos[i];
+        }
+    }
+
+    /** Columnas (0..10) que se normalizan de forma distinta con otro preprocesamiento. */
+    public boolean[] columnasDistintas(Preprocesamiento otro) {
+        boolean[] distintas = new boolean[DIMS];
+        distintas[1] = escalaGender != otro.escalaGender;
+        distintas[2] = escalaOcc    != otro.escalaOcc;
+        distintas[3] = escalaDevice != otro.escalaDevice;
+        for (int c : new int[]{0, 4, 5, 6, 7, 8, 9, 10}) {
+            int i = indiceRango(c);
+            distintas[c] = rangos[i] != otro.rangos[i] || rangos[i + 1] != otro.rangos[i + 1];
+        }
+        return distintas;
+    }
+
+    // Posición del min de una columna numérica en rangos (age, luego phone..screen)
+    private static int indiceRango(int columna) {
+        return columna == 0 ? 0 : 2 * (columna - 3);
+    }
+
+    // =========================================================
+    // ACCESO
+    // =========================================================
+
+    public Map<String, Integer> genderMap()     { return genderMap; }
+    public Map<String, Integer> occupationMap() { return occupationMap; }
+    public Map<String, Integer> deviceMap()     { return deviceMap; }
+
+    /** Copia de los 16 rangos min/max. */
+    public double[] rangos() { return rangos.clone(); }
+}
@@ -0,0 +1,375 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Puntuación por lotes de un CSV de usuarios: lee el CSV en streaming y escribe
+ * "User_ID,predicted_class" (clase 0, 1 o 2) en el mismo orden de entrada.
+ *
+ * El esquema es el de Datos.cargarDatos sin Stress_Level (12 columnas); si el
+ * encabezado trae Stress_Level, esa columna se ignora. Se descartan, con aviso
+ * por stderr, las líneas incompletas o que no se pueden parsear.
+ *
+ *   lectura      un hilo corta la entrada en bloques de bytes que terminan en
+ *                salto de línea, sin parsearlos
+ *   puntuación   cada bloque se parsea, se normaliza con el preprocesamiento del
+ *                modelo (escalas ya calculadas) y se predice con predecirVarios
+ *                en un pool de hilos
+ *   escritura    el hilo que llama a puntuar espera los bloques en orden y
+ *                escribe sus resultados
+ *
+ * La cola entre lectura y escritura es acotada: si los trabajadores o la salida
+ * se retrasan, la lectura se bloquea. En memoria hay como mucho enVuelo + 3
+ * bloques, sea cual sea el tamaño de la entrada. Todo el archivo se puntúa con
+ * la misma instantánea del modelo.
+ */
+public class PuntuadorCSV {
+
+    // Bytes de entrada por bloque: unas 8000 líneas del CSV de estrés
+    public static final int BLOQUE_BYTES = 512 * 1024;
+
+    // Campos lógicos de una línea de entrada (sin Stress_Level)
+    private static final int CAMPOS = 12;
+
+    private final ModeloKNN modelo;
+    private final int k;
+    private final int hilos;
+    private final int enVuelo;
+    private final int bytesBloque;
+
+    public PuntuadorCSV(ModeloKNN modelo, int k, int hilos, int enVuelo, int bytesBloque) {
+        if (modelo == null || modelo.vacio()) throw new IllegalStateException("Modelo no cargado");
+        if (k < 1 || hilos < 1 || enVuelo < 1 || bytesBloque < 1) {
+            throw new IllegalArgumentException("Parámetros no válidos: k=" + k + ", hilos=" + hilos
+                    + ", enVuelo=" + enVuelo + ", bytesBloque=" + bytesBloque);
+        }
+        this.modelo      = modelo;
+        this.k           = k;
+        this.hilos       = hilos;
+        this.enVuelo     = enVuelo;
+        this.bytesBloque = bytesBloque;
+    }
+
+    /** Un hilo por núcleo y dos bloques en vuelo por hilo. */
+    public PuntuadorCSV(ModeloKNN modelo, int k) {
+        this(modelo, k, Runtime.getRuntime().availableProcessors(),
+                2 * Runtime.getRuntime().availableProcessors(), BLOQUE_BYTES);
+    }
+
+    /** Filas puntuadas, líneas descartadas y duración de una ejecución. */
+    public static class Resumen {
+        public final long filas;
+        public final long descartadas;
+        public final long bloques;
+        public final long nanos;
+
+        Resumen(long filas, long descartadas, long bloques, long nanos) {
+            this.filas       = filas;
+            this.descartadas = descartadas;
+            this.bloques     = bloques;
+            this.nanos       = nanos;
+        }
+
+        public double filasPorSegundo() {
+            return nanos == 0 ? 0.0 : filas * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Puntuadas %d filas (%d descartadas, %d bloques) en %.1f ms: %.0f filas/s",
+                    filas, descartadas, bloques, nanos / 1e6, filasPorSegundo());
+        }
+    }
+
+    // Bloque puntuado: líneas de salida ya codificadas y errores en orden de entrada
+    private static class Bloque {
+        final byte[]       salida;
+        final int          filas;
+        final List<String> errores;
+
+        Bloque(byte[] salida, int filas, List<String> errores) {
+            this.salida  = salida;
+            this.filas   = filas;
+            this.errores = errores;
+        }
+    }
+
+    private static final byte[] ENCABEZADO = "User_ID,predicted_class\n".getBytes(StandardCharsets.US_ASCII);
+
+    // Marca de fin de la entrada en la cola
+    private static final Future<Bloque> FIN = CompletableFuture.completedFuture(null);
+
+    // =========================================================
+    // PIPELINE
+    // =========================================================
+
+    /** Puntúa la entrada completa, encabezado incluido; no cierra ninguno de los dos flujos. */
+    public Resumen puntuar(InputStream entrada, OutputStream salida) throws IOException {
+        long inicio = System.nanoTime();
+        BlockingQueue<Future<Bloque>> cola = new ArrayBlockingQueue<>(enVuelo);
+        AtomicInteger numeroHilo = new AtomicInteger();
+        ExecutorService trabajadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "knn-puntuacion-" + numeroHilo.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        IOException[] falloLectura = new IOException[1];
+        Thread lector = new Thread(() -> {
+            try {
+                leer(entrada, cola, trabajadores);
+            } catch (IOException e) {
+                falloLectura[0] = e;
+            } catch (InterruptedException e) {
+                return; // la escritura falló y ya no espera más bloques
+            }
+            try {
+                cola.put(FIN);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "knn-lectura");
+        lector.setDaemon(true);
+        lector.start();
+
+        salida.write(ENCABEZADO);
+
+        long filas = 0, descartadas = 0, bloques = 0;
+        boolean terminado = false;
+        try {
+            for (Future<Bloque> f = cola.take(); f != FIN; f = cola.take()) {
+                Bloque b = f.get();
+                salida.write(b.salida);
+                for (String error : b.errores) System.err.println(error);
+                filas       += b.filas;
+                descartadas += b.errores.size();
+                bloques++;
+            }
+            salida.flush();
+            lector.join();
+            if (falloLectura[0] != null) throw falloLectura[0];
+            terminado = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Puntuación por lotes interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error en puntuación por lotes", e.getCause());
+        } finally {
+            if (!terminado) {
+                lector.interrupt();
+                for (Future<Bloque> f : cola) f.cancel(true);
+            }
+            trabajadores.shutdownNow();
+        }
+
+        Metricas.lineasDescartadas(descartadas);
+        return new Resumen(filas, descartadas, bloques, System.nanoTime() - inicio);
+    }
+
+    /**
+     * Corta la entrada en bloques que terminan en salto de línea y los envía a
+     * los trabajadores. El encabezado decide dónde están las columnas.
+     */
+    private void leer(InputStream entrada, BlockingQueue<Future<Bloque>> cola, ExecutorService trabajadores)
+            throws IOException, InterruptedException {
+        byte[] buf = new byte[bytesBloque];
+        int lleno = 0;
+        int[] columnas = null;
+
+        while (true) {
+            int leidos = entrada.readNBytes(buf, lleno, buf.length - lleno);
+            lleno += leidos;
+            boolean fin = lleno < buf.length;
+
+            if (columnas == null) {
+                int salto = indiceSalto(buf, 0, lleno);
+                if (salto < 0 && !fin) {
+                    buf = Arrays.copyOf(buf, buf.length * 2); // encabezado más largo que el bloque
+                    continue;
+                }
+                int finCabecera = salto < 0 ? lleno : salto + 1;
+                columnas = columnas(new String(buf, 0, finCabecera, StandardCharsets.UTF_8));
+                System.arraycopy(buf, finCabecera, buf, 0, lleno - finCabecera);
+                lleno -= finCabecera;
+                if (!fin) continue;
+            }
+
+            // Hasta el último salto de línea; al final de la entrada, todo lo que quede
+            int corte = fin ? lleno : ultimoSalto(buf, lleno) + 1;
+            if (corte == 0 && !fin) {
+                buf = Arrays.copyOf(buf, buf.length * 2); // línea más larga que el bloque
+                continue;
+            }
+
+            if (corte > 0) {
+                byte[] bloque = buf;
+                int[] cols = columnas;
+                cola.put(trabajadores.submit(() -> puntuarBloque(bloque, 0, corte, cols)));
+            }
+            if (fin) return;
+
+            // El resto (línea incompleta) pasa al principio de un búfer nuevo
+            byte[] nuevo = new byte[Math.max(bytesBloque, lleno - corte + 1)];
+            System.arraycopy(buf, corte, nuevo, 0, lleno - corte);
+            lleno = lleno - corte;
+            buf = nuevo;
+        }
+    }
+
+    private static int indiceSalto(byte[] buf, int desde, int hasta) {
+        for (int p = desde; p < hasta; p++) if (buf[p] == '\n') return p;
+        return -1;
+    }
+
+    private static int ultimoSalto(byte[] buf, int hasta) {
+        for (int p = hasta - 1; p >= 0; p--) if (buf[p] == '\n') return p;
+        return -1;
+    }
+
+    /**
+     * Posición en la línea de cada campo lógico (User_ID, Age, ..., Weekend_Screen_Time_Hours)
+     * y, en la última posición, el número de columnas que debe tener una línea.
+     */
+    static int[] columnas(String encabezado) {
+        String[] nombres = encabezado.trim().split(",");
+        int estres = -1;
+        for (int i = 0; i < nombres.length; i++) {
+            if (nombres[i].trim().equals("Stress_Level")) estres = i;
+        }
+        int[] columnas = new int[CAMPOS + 1];
+        for (int c = 0; c < CAMPOS; c++) columnas[c] = (estres >= 0 && c >= estres) ? c + 1 : c;
+        columnas[CAMPOS] = estres >= 0 ? CAMPOS + 1 : CAMPOS;
+        return columnas;
+    }
+
+    // =========================================================
+    // PUNTUACIÓN DE UN BLOQUE
+    // =========================================================
+
+    private Bloque puntuarBloque(byte[] datos, int desde, int hasta, int[] columnas) {
+        ByteBuffer buf = ByteBuffer.wrap(datos);
+        Preprocesamiento p = modelo.preprocesamiento();
+        int numColumnas = columnas[CAMPOS];
+
+        int maxLineas = 1;
+        for (int i = desde; i < hasta; i++) if (datos[i] == '\n') maxLineas++;
+        double[][] consultas = new double[maxLineas][];
+        int[] idIni = new int[maxLineas];
+        int[] idFin = new int[maxLineas];
+        List<String> errores = new ArrayList<>();
+
+        int[] inicioCampo = new int[numColumnas + 1];
+        int[] finCampo    = new int[numColumnas + 1];
+        int n = 0;
+        int pos = desde;
+        while (pos < hasta) {
+            int ini = pos, fin = pos;
+            while (fin < hasta && datos[fin] != '\n') fin++;
+            pos = fin + 1;
+            if (fin > ini && datos[fin - 1] == '\r') fin--;
+            if (CargadorCSV.enBlanco(buf, ini, fin)) continue;
+
+            int cols = CargadorCSV.campos(buf, ini, fin, inicioCampo, finCampo);
+            if (cols < numColumnas) {
+                errores.add("Línea incompleta o mal formateada (columnas=" + cols + "): "
+                        + CargadorCSV.texto(buf, ini, fin));
+                continue;
+            }
+
+            try {
+                consultas[n] = p.vectorizar(
+                        CargadorCSV.parsearEntero(buf, inicioCampo[columnas[1]], finCampo[columnas[1]]),
+                        CargadorCSV.texto(buf, inicioCampo[columnas[2]], finCampo[columnas[2]]),
+                        CargadorCSV.texto(buf, inicioCampo[columnas[3]], finCampo[columnas[3]]),
+                        CargadorCSV.texto(buf, inicioCampo[columnas[4]], finCampo[columnas[4]]),
+                        CargadorCSV.parsearDecimal(buf, inicioCampo[columnas[5]],  finCampo[columnas[5]]),
+                        CargadorCSV.parsearDecimal(buf, inicioCampo[columnas[6]],  finCampo[columnas[6]]),
+                        CargadorCSV.parsearDecimal(buf, inicioCampo[columnas[7]],  finCampo[columnas[7]]),
+                        CargadorCSV.parsearDecimal(buf, inicioCampo[columnas[8]],  finCampo[columnas[8]]),
+                        CargadorCSV.parsearEntero(buf,  inicioCampo[columnas[9]],  finCampo[columnas[9]]),
+                        CargadorCSV.parsearDecimal(buf, inicioCampo[columnas[10]], finCampo[columnas[10]]),
+                        CargadorCSV.parsearDecimal(buf, inicioCampo[columnas[11]], finCampo[columnas[11]]));
+            } catch (NumberFormatException e) {
+                errores.add("Error al parsear línea: " + CargadorCSV.texto(buf, ini, fin) + " - " + e.getMessage());
+                continue;
+            }
+            idIni[n] = inicioCampo[columnas[0]];
+            idFin[n] = finCampo[columnas[0]];
+            n++;
+        }
+
+        int[] clases = new int[n];
+        modelo.buscador().predecirVarios(consultas, 0, n, k, clases);
+
+        // "User_ID,clase\n" copiando el identificador tal cual
+        int largo = 0;
+        for (int i = 0; i < n; i++) largo += idFin[i] - idIni[i] + 3;
+        byte[] salida = new byte[largo];
+        int o = 0;
+        for (int i = 0; i < n; i++) {
+            int l = idFin[i] - idIni[i];
+            System.arraycopy(datos, idIni[i], salida, o, l);
+            o += l;
+            salida[o++] = ',';
+            salida[o++] = (byte) ('0' + clases[i]);
+            salida[o++] = '\n';
+        }
+        return new Bloque(salida, n, errores);
+    }
+
+    // =========================================================
+    // USO DESDE LÍNEA DE COMANDOS
+    // =========================================================
+
+    /**
+     * Puntúa un CSV con un modelo guardado ("-" = entrada o salida estándar):
+     *   java backend.PuntuadorCSV modelo.knnm usuarios.csv predicciones.csv [k]
+     * Hilos con -Dknn.puntuacion.hilos, bloques en vuelo con
+     * -Dknn.puntuacion.enVuelo y tamaño de bloque con -Dknn.puntuacion.bloque.
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Uso: PuntuadorCSV <modelo.knnm> <usuarios.csv|-> <salida.csv|-> [k]");
+            return;
+        }
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        int hilos = Integer.getInteger("knn.puntuacion.hilos", nucleos);
+        try {
+            ModeloKNN modelo = ModeloKNN.cargar(args[0], System.getProperty("knn.busqueda", "kd"));
+            PuntuadorCSV puntuador = new PuntuadorCSV(modelo, k, hilos,
+                    Integer.getInteger("knn.puntuacion.enVuelo", 2 * hilos),
+                    Integer.getInteger("knn.puntuacion.bloque", BLOQUE_BYTES));
+
+            InputStream entrada = "-".equals(args[1]) ? System.in : new FileInputStream(args[1]);
+            OutputStream salida = "-".equals(args[2]) ? System.out : new FileOutputStream(args[2]);
+            Resumen resumen;
+            try (InputStream in = new BufferedInputStream(entrada, 1 << 16);
+                 OutputStream out = new BufferedOutputStream(salida, 1 << 16)) {
+                resumen = puntuador.puntuar(in, out);
+            }
+            System.err.println(resumen + " con " + hilos + " hilos");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Reducción del conjunto de entrenamiento a un conjunto de prototipos para que
+ * el modelo guardado, el JSON del frontend y cada predicción recorran menos filas.
+ *
+ *   CNN      vecino más cercano condensado (Hart): conserva solo las filas que
+ *            el conjunto ya retenido clasifica mal con 1-NN.
+ *   ENN      vecino más cercano editado (Wilson): elimina las filas que sus
+ *            k vecinos clasifican mal (limpia ruido; no fija el tamaño final).
+ *   KMEDIAS  k-medias dentro de cada clase; los centroides son los prototipos,
+ *            repartidos entre clases en proporción a su frecuencia.
+ *
+ * Las filas usan el formato del modelo (características + clase en la última posición).
+ */
+public class ReduccionPrototipos {
+
+    public enum Metodo { CNN, ENN, KMEDIAS }
+
+    private static final int ITERACIONES_KMEDIAS = 10;
+
+    /** Reduce hacia un tamaño objetivo (ENN ignora el objetivo). */
+    public static List<double[]> reducir(Metodo metodo, List<double[]> trainSet, int k,
+                                         int tamanoObjetivo, long semilla) {
+        switch (metodo) {
+            case CNN:     return condensar(trainSet, tamanoObjetivo, semilla);
+            case ENN:     return editar(trainSet, k);
+            case KMEDIAS: return kMediasPorClase(trainSet, tamanoObjetivo, semilla);
+            default:      throw new IllegalArgumentException("Método desconocido: " + metodo);
+        }
+    }
+
+    /**
+     * Busca el conjunto más pequeño (n/2, n/4, ...) cuya precisión sobre el
+     * conjunto de validación no baje más de perdidaMaxima puntos porcentuales
+     * respecto del conjunto completo. Si ninguno cumple, devuelve el original.
+     */
+    public static List<double[]> reducirConPerdidaMaxima(Metodo metodo, List<double[]> trainSet,
+                                                         List<double[]> validacion, int k,
+                                                         double perdidaMaxima, long semilla) {
+        double base = precision(trainSet, validacion, k);
+        List<double[]> mejor = trainSet;
+
+        if (metodo == Metodo.ENN) {
+            List<double[]> editado = editar(trainSet, k);
+            return base - precision(editado, validacion, k) <= perdidaMaxima ? editado : trainSet;
+        }
+
+        int minimo = MotorKNN.contarClases(etiquetas(trainSet));
+        for (int tamano = trainSet.size() / 2; tamano >= minimo; tamano /= 2) {
+            List<double[]> candidato = reducir(metodo, trainSet, k, tamano, semilla);
+            double p = precision(candidato, validacion, k);
+            System.out.printf("  %s tamaño=%d precisión=%.2f%% (base %.2f%%)%n", metodo, candidato.size(), p, base);
+            if (base - p > perdidaMaxima) break;
+            mejor = candidato;
+        }
+        return mejor;
+    }
+
+    // =========================================================
+    // CNN (Hart)
+    // =========================================================
+
+    public static List<double[]> condensar(List<double[]> trainSet, int tamanoMax, long semilla) {
+        int n = trainSet.size();
+        if (n == 0) return new ArrayList<>();
+        int dims = trainSet.get(0).length - 1;
+
+        List<double[]> orden = new ArrayList<>(trainSet);
+        Collections.shuffle(orden, new Random(semilla));
+
+        // Prototipos retenidos en un arreglo plano que crece
+        double[] protos = new double[Math.min(n, Math.max(tamanoMax, 1)) * dims];
+        int[]    clases = new int[protos.length / Math.max(dims, 1)];
+        boolean[] retenido = new boolean[n];
+        List<double[]> resultado = new ArrayList<>();
+
+        // Semilla: la primera fila de cada clase
+        boolean[] claseVista = new boolean[MotorKNN.contarClases(etiquetas(orden))];
+        for (int i = 0; i < n && resultado.size() < tamanoMax; i++) {
+            int c = (int) orden.get(i)[dims];
+            if (!claseVista[c]) {
+                claseVista[c] = true;
+                agregar(orden.get(i), resultado.size(), dims, protos, clases);
+                resultado.add(orden.get(i));
+                retenido[i] = true;
+            }
+        }
+
+        boolean cambios = true;
+        while (cambios && resultado.size() < tamanoMax) {
+            cambios = false;
+            for (int i = 0; i < n && resultado.size() < tamanoMax; i++) {
+                if (retenido[i]) continue;
+                double[] fila = orden.get(i);
+                if (vecinoMasCercano(fila, protos, clases, resultado.size(), dims) != (int) fila[dims]) {
+                    agregar(fila, resultado.size(), dims, protos, clases);
+                    resultado.add(fila);
+                    retenido[i] = true;
+                    cambios = true;
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private static void agregar(double[] fila, int pos, int dims, double[] protos, int[] clases) {
+        System.arraycopy(fila, 0, protos, pos * dims, dims);
+        clases[pos] = (int) fila[dims];
+    }
+
+    private static int vecinoMasCercano(double[] q, double[] protos, int[] clases, int tam, int dims) {
+        double mejor = Double.POSITIVE_INFINITY;
+        int clase = -1;
+        for (int p = 0, base = 0; p < tam; p++, base += dims) {
+            double sum = 0.0;
+            for (int j = 0; j < dims && sum < mejor; j++) {
+                double diff = q[j] - protos[base + j];
+                sum += diff * diff;
+            }
+            if (sum < mejor) { mejor = sum; clase = clases[p]; }
+        }
+        return clase;
+    }
+
+    // =========================================================
+    // ENN (Wilson)
+    // =========================================================
+
+    public static List<double[]> editar(List<double[]> trainSet, int k) {
+        int n = trainSet.size();
+        if (n == 0) return new ArrayList<>();
+        int dims = trainSet.get(0).length - 1;
+
+        MotorKNN motor  = MotorKNN.desdeLista(trainSet);
+        IndiceKD indice = new IndiceKD(motor);
+        int numClases   = motor.numClases();
+        int[] clases    = motor.etiquetas();
+
+        // Cada fila se clasifica con sus k vecinos sin contarse a sí misma
+        boolean[] conservar = new boolean[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int[] idx = new int[k + 1];
+            int tam = indice.vecinos(trainSet.get(i), k + 1, idx, null);
+            int[] votos = new int[numClases];
+            int usados = 0;
+            for (int v = 0; v < tam && usados < k; v++) {
+                if (idx[v] == i) continue;
+                votos[clases[idx[v]]]++;
+                usados++;
+            }
+            conservar[i] = MotorKNN.ganadora(votos) == (int) trainSet.get(i)[dims];
+        });
+
+        List<double[]> resultado = new ArrayList<>();
+        for (int i = 0; i < n; i++) if (conservar[i]) resultado.add(trainSet.get(i));
+        return resultado;
+    }
+
+    // =========================================================
+    // K-MEDIAS POR CLASE
+    // =========================================================
+
+    public static List<double[]> kMediasPorClase(List<double[]> trainSet, int tamanoObjetivo, long semilla) {
+        int n = trainSet.size();
+        if (n == 0) return new ArrayList<>();
+        int dims = trainSet.get(0).length - 1;
+        int numClases = MotorKNN.contarClases(etiquetas(trainSet));
+
+        // Separar filas por clase
+        List<List<double[]>> porClase = new ArrayList<>();
+        for (int c = 0; c < numClases; c++) porClase.add(new ArrayList<>());
+        for (double[] fila : trainSet) porClase.get((int) fila[dims]).add(fila);
+
+        Random rnd = new Random(semilla);
+        List<double[]> resultado = new ArrayList<>();
+        for (int c = 0; c < numClases; c++) {
+            List<double[]> filas = porClase.get(c);
+            if (filas.isEmpty()) continue;
+            int m = (int) Math.max(1, Math.min(filas.size(), Math.round((double) tamanoObjetivo * filas.size() / n)));
+            for (double[] centroide : kMedias(filas, m, dims, rnd)) {
+                double[] proto = Arrays.copyOf(centroide, dims + 1);
+                proto[dims] = c;
+                resultado.add(proto);
+            }
+        }
+        return resultado;
+    }
+
+    private static List<double[]> kMedias(List<double[]> filas, int m, int dims, Random rnd) {
+        int n = filas.size();
+
+        // Inicialización: m filas distintas al azar
+        List<double[]> copia = new ArrayList<>(filas);
+        Collections.shuffle(copia, rnd);
+        double[] centros = new double[m * dims];
+        for (int c = 0; c < m; c++) System.arraycopy(copia.get(c), 0, centros, c * dims, dims);
+
+        int[] asignacion = new int[n];
+        for (int iter = 0; iter < ITERACIONES_KMEDIAS; iter++) {
+            final double[] actuales = centros;
+            IntStream.range(0, n).parallel().forEach(i -> {
+                double[] fila = filas.get(i);
+                double mejor = Double.POSITIVE_INFINITY;
+                int elegido = 0;
+                for (int c = 0, base = 0; c < m; c++, base += dims) {
+                    double sum = 0.0;
+                    for (int j = 0; j < dims && sum < mejor; j++) {
+                        double diff = fila[j] - actuales[base + j];
+                        sum += diff * diff;
+                    }
+                    if (sum < mejor) { mejor = sum; elegido = c; }
+                }
+                asignacion[i] = elegido;
+            });
+
+            // Recalcular centroides (un grupo vacío conserva su centro anterior)
+            double[] sumas = new double[m * dims];
+            int[] conteos  = new int[m];
+            for (int i = 0; i < n; i++) {
+                int c = asignacion[i];
+                conteos[c]++;
+                double[] fila = filas.get(i);
+                for (int j = 0; j < dims; j++) sumas[c * dims + j] += fila[j];
+            }
+            double[] nuevos = new double[m * dims];
+            for (int c = 0; c < m; c++) {
+                for (int j = 0; j < dims; j++) {
+                    nuevos[c * dims + j] = conteos[c] == 0 ? centros[c * dims + j] : sumas[c * dims + j] / conteos[c];
+                }
+            }
+            centros = nuevos;
+        }
+
+        List<double[]> resultado = new ArrayList<>(m);
+        for (int c = 0; c < m; c++) resultado.add(Arrays.copyOfRange(centros, c * dims, (c + 1) * dims));
+        return resultado;
+    }
+
+    // =========================================================
+    // MEDICIÓN
+    // =========================================================
+
+    /**
+     * Evalúa el conjunto completo y el reducido con Modelo.evaluarModelo e
+     * informa la compresión, el cambio de precisión y la aceleración.
+     */
+    public static void informar(List<double[]> original, List<double[]> reducido, List<double[]> testSet, int k) {
+        Modelo.Evaluacion antes   = Modelo.evaluarModelo(original, testSet, k);
+        Modelo.Evaluacion despues = Modelo.evaluarModelo(reducido, testSet, k);
+
+        System.out.println("Reducción de prototipos");
+        System.out.printf("Filas: %d -> %d (compresión %.2fx)%n",
+                original.size(), reducido.size(), (double) original.size() / Math.max(reducido.size(), 1));
+        System.out.printf("Precisión: %.2f%% -> %.2f%% (%+.2f puntos)%n",
+                antes.precision, despues.precision, despues.precision - antes.precision);
+        System.out.printf("Aceleración de predicción: %.2fx%n", (double) antes.nanos / Math.max(despues.nanos, 1));
+    }
+
+    // Precisión silenciosa (%) usada para elegir el tamaño
+    private static double precision(List<double[]> trainSet, List<double[]> validacion, int k) {
+        if (validacion.isEmpty()) return 0.0;
+        IndiceKD indice = new IndiceKD(MotorKNN.desdeLista(trainSet));
+        int[] pred = PrediccionLote.predecir(indice, validacion, k);
+        int aciertos = 0;
+        for (int i = 0; i < pred.length; i++) {
+            double[] fila = validacion.get(i);
+            if (pred[i] == (int) fila[fila.length - 1]) aciertos++;
+        }
+        return 100.0 * aciertos / validacion.size();
+    }
+
+    private static int[] etiquetas(List<double[]> filas) {
+        int[] clases = new int[filas.size()];
+        for (int i = 0; i < clases.length; i++) {
+            double[] fila = filas.get(i);
+            clases[i] = (int) fila[fila.length - 1];
+        }
+        return clases;
+    }
+}
@@ -0,0 +1,178 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Selección de k por validación cruzada en una sola pasada.
+ *
+ * Para cada fila de validación se buscan una única vez sus kMax vecinos,
+ * ordenados por (distancia², índice). Como el buscador es exacto, los k primeros
+ * de esa lista son exactamente los k vecinos de predecir(consulta, k), así que
+ * basta recorrerla sumando votos para obtener la predicción de cada k = 1..kMax:
+ * el coste es el de una evaluación con kMax, no el de kMax evaluaciones.
+ *
+ * Los pliegues son bloques contiguos de las filas (que ya vienen barajadas) y
+ * se evalúan en paralelo, repartiendo sus consultas en bloques entre los núcleos.
+ */
+public class SeleccionK {
+
+    // Consultas por tarea: suficiente para amortizar el reparto de trabajo
+    private static final int BLOQUE = 256;
+
+    public static Resultado seleccionar(List<double[]> filas, int kMax, int pliegues, String modoBusqueda) {
+        int n = filas.size();
+        if (pliegues < 2 || pliegues > n) {
+            throw new IllegalArgumentException("Número de pliegues no válido: " + pliegues + " (filas=" + n + ")");
+        }
+        if (kMax < 1) throw new IllegalArgumentException("kMax debe ser al menos 1: " + kMax);
+
+        long inicio = System.nanoTime();
+        int[] limites = new int[pliegues + 1];
+        for (int p = 0; p <= pliegues; p++) limites[p] = (int) ((long) n * p / pliegues);
+
+        // Un buscador por pliegue, entrenado con el resto de filas
+        BuscadorKNN[] buscadores = IntStream.range(0, pliegues).parallel()
+                .mapToObj(p -> {
+                    List<double[]> entrenamiento = new ArrayList<>(n - (limites[p + 1] - limites[p]));
+                    entrenamiento.addAll(filas.subList(0, limites[p]));
+                    entrenamiento.addAll(filas.subList(limites[p + 1], n));
+                    return ModeloKNN.crearBuscador(entrenamiento, modoBusqueda);
+                })
+                .toArray(BuscadorKNN[]::new);
+
+        // Tareas (pliegue, desde, hasta) para repartir todas las consultas a la vez
+        List<int[]> tareas = new ArrayList<>();
+        for (int p = 0; p < pliegues; p++) {
+            for (int d = limites[p]; d < limites[p + 1]; d += BLOQUE) {
+                tareas.add(new int[]{p, d, Math.min(limites[p + 1], d + BLOQUE)});
+            }
+        }
+
+        long[][] aciertos = new long[pliegues][kMax + 1];
+        tareas.parallelStream().forEach(t -> {
+            int p = t[0];
+            long[] locales = evaluarBloque(buscadores[p], filas, limites[p], limites[p + 1], t[1], t[2], kMax);
+            synchronized (aciertos[p]) {
+                for (int k = 1; k <= kMax; k++) aciertos[p][k] += locales[k];
+            }
+        });
+
+        int[] tamanos = new int[pliegues];
+        for (int p = 0; p < pliegues; p++) tamanos[p] = limites[p + 1] - limites[p];
+        return new Resultado(aciertos, tamanos, kMax, System.nanoTime() - inicio);
+    }
+
+    /**
+     * Aciertos de cada k = 1..kMax sobre las filas [desde, hasta) del pliegue
+     * [iniPliegue, finPliegue), con una sola búsqueda por fila. El buscador se
+     * entrenó con las filas fuera del pliegue, en su orden original.
+     */
+    private static long[] evaluarBloque(BuscadorKNN buscador, List<double[]> filas, int iniPliegue, int finPliegue,
+                                        int desde, int hasta, int kMax) {
+        long[] aciertos = new long[kMax + 1];
+        int[] indices = new int[kMax];
+        int[] clases  = new int[kMax];
+        int[] votos   = new int[0];
+        int hueco = finPliegue - iniPliegue;
+
+        for (int i = desde; i < hasta; i++) {
+            double[] consulta = filas.get(i);
+            int real = (int) consulta[consulta.length - 1];
+            int tam = buscador.vecinos(consulta, kMax, indices, null);
+            for (int j = 0; j < tam; j++) {
+                // Índice del entrenamiento del pliegue -> índice en filas
+                double[] vecino = filas.get(indices[j] < iniPliegue ? indices[j] : indices[j] + hueco);
+                clases[j] = (int) vecino[vecino.length - 1];
+            }
+
+            int maxClase = 0;
+            for (int j = 0; j < tam; j++) maxClase = Math.max(maxClase, clases[j]);
+            if (votos.length <= maxClase) votos = new int[maxClase + 1];
+            Arrays.fill(votos, 0);
+
+            // Mismo desempate que MotorKNN.votar: a igual número de votos gana la clase menor
+            int ganadora = -1;
+            for (int k = 1; k <= kMax; k++) {
+                if (k <= tam) {
+                    int c = clases[k - 1];
+                    votos[c]++;
+                    if (ganadora < 0 || votos[c] > votos[ganadora] || (votos[c] == votos[ganadora] && c < ganadora)) {
+                        ganadora = c;
+                    }
+                }
+                // Con menos de k filas de entrenamiento la predicción es la de todas ellas
+                if (ganadora == real) aciertos[k]++;
+            }
+        }
+        return aciertos;
+    }
+
+    // =========================================================
+    // RESULTADO
+    // =========================================================
+
+    public static class Resultado {
+        private final long[][] aciertos; // [pliegue][k]
+        private final int[]    tamanos;
+        private final int      kMax;
+        private final long     nanos;
+        private final int      mejorK;
+
+        Resultado(long[][] aciertos, int[] tamanos, int kMax, long nanos) {
+            this.aciertos = aciertos;
+            this.tamanos  = tamanos;
+            this.kMax     = kMax;
+            this.nanos    = nanos;
+
+            // Mayor precisión global; a igualdad, el k más pequeño
+            int mejor = 1;
+            for (int k = 2; k <= kMax; k++) {
+                if (aciertosTotales(k) > aciertosTotales(mejor)) mejor = k;
+            }
+            this.mejorK = mejor;
+        }
+
+        public int  mejorK()   { return mejorK; }
+        public int  kMax()     { return kMax; }
+        public int  pliegues() { return tamanos.length; }
+        public long nanos()    { return nanos; }
+
+        /** Precisión (%) de k en un pliegue. */
+        public double precision(int pliegue, int k) {
+            return tamanos[pliegue] == 0 ? 0.0 : aciertos[pliegue][k] * 100.0 / tamanos[pliegue];
+        }
+
+        /** Precisión (%) de k sobre todas las filas (cada una se valida una vez). */
+        public double precisionGlobal(int k) {
+            long total = 0;
+            for (int t : tamanos) total += t;
+            return total == 0 ? 0.0 : aciertosTotales(k) * 100.0 / total;
+        }
+
+        private long aciertosTotales(int k) {
+            long suma = 0;
+            for (long[] a : aciertos) suma += a[k];
+            return suma;
+        }
+
+        public void imprimir() {
+            System.out.println("Selección de k (validación cruzada, " + pliegues() + " pliegues, k=1.." + kMax + ")");
+            StringBuilder cabecera = new StringBuilder(String.format("%4s", "k"));
+            for (int p = 0; p < pliegues(); p++) cabecera.append(String.format(" %9s", "Pliegue " + (p + 1)));
+            cabecera.append(String.format(" %9s", "Global"));
+            System.out.println(cabecera);
+
+            for (int k = 1; k <= kMax; k++) {
+                StringBuilder fila = new StringBuilder(String.format("%4d", k));
+                for (int p = 0; p < pliegues(); p++) fila.append(String.format(" %8.2f%%", precision(p, k)));
+                fila.append(String.format(" %8.2f%%", precisionGlobal(k)));
+                if (k == mejorK) fila.append("  <-");
+                System.out.println(fila);
+            }
+            System.out.printf("k elegido: %d (precisión %.2f%%) en %.1f ms%n", mejorK, precisionGlobal(mejorK), nanos / 1e6);
+        }
+    }
+}
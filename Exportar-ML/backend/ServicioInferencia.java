@@ -0,0 +1,59 @@
+package backend;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Punto de publicación del modelo activo para predicciones concurrentes.
+ *
+ * Cada predicción lee la referencia una sola vez y trabaja de principio a fin
+ * con esa instantánea inmutable, sin bloqueos. Publicar un modelo nuevo es un
+ * único intercambio atómico: las peticiones en curso terminan con el modelo
+ * anterior y las siguientes ven el nuevo, nunca una mezcla de ambos. El modelo
+ * nuevo se construye entero (índice incluido) antes de publicarse.
+ */
+public class ServicioInferencia {
+
+    private final AtomicReference<ModeloKNN> actual = new AtomicReference<>();
+
+    /** Modelo publicado, o null si todavía no hay ninguno. */
+    public ModeloKNN actual() {
+        return actual.get();
+    }
+
+    /** Publica el modelo y devuelve el que estaba activo (o null). */
+    public ModeloKNN publicar(ModeloKNN nuevo) {
+        return actual.getAndSet(nuevo);
+    }
+
+    /** Carga el modelo de disco y lo publica solo si la carga termina bien. */
+    public ModeloKNN recargar(String ruta, String modoBusqueda) throws IOException {
+        ModeloKNN nuevo = ModeloKNN.cargar(ruta, modoBusqueda);
+        publicar(nuevo);
+        return nuevo;
+    }
+
+    public String predecirNuevoUsuario(int age, String gender, String occupation, String deviceType,
+                                       double dailyPhoneHours, double socialMediaHours,
+                                       double workProductivityScore, double sleepHours, int appUsageCount,
+                                       double caffeineIntakeCups, double weekendScreenTimeHours, int k) {
+        ModeloKNN modelo = actual.get();
+        if (modelo == null || modelo.vacio()) {
+            return "Error: Modelo no cargado.";
+        }
+        long inicio = Metricas.inicio();
+        int clase = modelo.predecirNuevoUsuario(age, gender, occupation, deviceType, dailyPhoneHours,
+                socialMediaHours, workProductivityScore, sleepHours, appUsageCount,
+                caffeineIntakeCups, weekendScreenTimeHours, k);
+        Metricas.latencia(Metricas.NUEVO_USUARIO, inicio);
+        return ModeloKNN.nombreClase(clase);
+    }
+
+    /** Predice un lote de vectores ya normalizados con un mismo modelo. */
+    public int[] predecirLote(List<double[]> vectores, int k) {
+        ModeloKNN modelo = actual.get();
+        if (modelo == null) throw new IllegalStateException("Modelo no cargado");
+        return PrediccionLote.predecir(modelo.buscador(), vectores, k);
+    }
+}
@@ -0,0 +1,413 @@
+package backend;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servidor HTTP local de predicción (com.sun.net.httpserver, sin dependencias).
+ *
+ *   POST /predecir   cuerpo: un usuario o un arreglo de usuarios en JSON
+ *     {"age": 30, "gender": "Male", "occupation": "Student", "deviceType": "iOS",
+ *      "dailyPhoneHours": 5.5, "socialMediaHours": 3, "workProductivityScore": 6,
+ *      "sleepHours": 7, "appUsageCount": 20, "caffeineIntakeCups": 2,
+ *      "weekendScreenTimeHours": 6, "k": 15}            ("k" es opcional)
+ *   respuesta: {"clase": 1, "prediccion": "Medio (Alerta)"} o un arreglo de ellos
+ *
+ * Cada petición se atiende en un hilo virtual (Java 21+; en versiones
+ * anteriores, un pool de hilos normales) y sus consultas pasan por un
+ * AgrupadorLotes compartido, que junta las de peticiones concurrentes.
+ *
+ * Los cuerpos de más de maxCuerpo bytes y las peticiones con más de
+ * maxUsuarios usuarios se rechazan con 413 sin leerlos enteros.
+ *
+ * Uso (desde Exportar-ML):
+ *   java -Dknn.servidor.puerto=8080 -Dknn.lote.max=64 -Dknn.lote.esperaUs=1000 \
+ *        -Dknn.servidor.maxCuerpo=1048576 -Dknn.servidor.maxUsuarios=1000 \
+ *        backend.ServidorPrediccion stressprediction.knnm
+ */
+public class ServidorPrediccion implements AutoCloseable {
+
+    private static final String[] CAMPOS_NUMERICOS = {
+        "age", "dailyPhoneHours", "socialMediaHours", "workProductivityScore", "sleepHours",
+        "appUsageCount", "caffeineIntakeCups", "weekendScreenTimeHours"
+    };
+
+    // Límites por petición por defecto: 1 MB de cuerpo y 1000 usuarios
+    public static final int MAX_CUERPO   = 1 << 20;
+    public static final int MAX_USUARIOS = 1000;
+
+    private final HttpServer      servidor;
+    private final ExecutorService hilos;
+    private final AgrupadorLotes  agrupador;
+    private final int             kPorDefecto;
+    private final int             maxCuerpo;
+    private final int             maxUsuarios;
+
+    public ServidorPrediccion(ServicioInferencia servicio, String host, int puerto,
+                              int maxLote, long maxEsperaMicros, int kPorDefecto) throws IOException {
+        this(servicio, host, puerto, maxLote, maxEsperaMicros, kPorDefecto, MAX_CUERPO, MAX_USUARIOS);
+    }
+
+    public ServidorPrediccion(ServicioInferencia servicio, String host, int puerto, int maxLote,
+                              long maxEsperaMicros, int kPorDefecto, int maxCuerpo, int maxUsuarios) throws IOException {
+        if (maxCuerpo < 1 || maxUsuarios < 1) {
+            throw new IllegalArgumentException("Límites de petición inválidos: " + maxCuerpo + " bytes, " + maxUsuarios + " usuarios");
+        }
+        this.agrupador   = new AgrupadorLotes(servicio, maxLote, maxEsperaMicros);
+        this.kPorDefecto = kPorDefecto;
+        this.maxCuerpo   = maxCuerpo;
+        this.maxUsuarios = maxUsuarios;
+        this.hilos       = ejecutorPorPeticion();
+        this.servidor    = HttpServer.create(new InetSocketAddress(host, puerto), 0);
+        this.servidor.createContext("/predecir", this::atender);
+        this.servidor.setExecutor(hilos);
+    }
+
+    public void iniciar() { servidor.start(); }
+
+    public int puerto() { return servidor.getAddress().getPort(); }
+
+    public AgrupadorLotes agrupador() { return agrupador; }
+
+    @Override
+    public void close() {
+        servidor.stop(0);
+        agrupador.close();
+        hilos.shutdown();
+    }
+
+    // Hilo virtual por petición si la JVM lo permite (se busca por reflexión para compilar con Java 17)
+    static ExecutorService ejecutorPorPeticion() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // =========================================================
+    // MAIN
+    // =========================================================
+
+    public static void main(String[] args) throws IOException {
+        String ruta    = args.length > 0 ? args[0] : "stressprediction.knnm";
+        String host    = System.getProperty("knn.servidor.host", "127.0.0.1");
+        int    puerto  = Integer.getInteger("knn.servidor.puerto", 8080);
+        int    maxLote = Integer.getInteger("knn.lote.max", 64);
+        long   espera  = Long.getLong("knn.lote.esperaUs", 1000L);
+        int    k       = Integer.getInteger("knn.k", 15);
+        int    maxCuerpo   = Integer.getInteger("knn.servidor.maxCuerpo", MAX_CUERPO);
+        int    maxUsuarios = Integer.getInteger("knn.servidor.maxUsuarios", MAX_USUARIOS);
+
+        Metricas.configurar();
+        Modelo.cargarModelo(ruta);
+        if (Modelo.servicio().actual() == null) {
+            System.out.println("Error: Modelo no cargado.");
+            return;
+        }
+
+        ServidorPrediccion servidor = new ServidorPrediccion(Modelo.servicio(), host, puerto, maxLote, espera, k,
+                maxCuerpo, maxUsuarios);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.close();
+            System.out.printf("Lotes atendidos: %d (%.1f consultas por lote)%n",
+                    servidor.agrupador.lotes(), servidor.agrupador.tamanoMedioLote());
+        }));
+        servidor.iniciar();
+        System.out.printf("Servidor escuchando en http://%s:%d/predecir (lote máx %d, espera %d µs, k=%d)%n",
+                host, servidor.puerto(), maxLote, espera, k);
+    }
+
+    // =========================================================
+    // PETICIONES
+    // =========================================================
+
+    private void atender(HttpExchange intercambio) throws IOException {
+        long inicio = Metricas.inicio();
+        try {
+            if (!"POST".equals(intercambio.getRequestMethod())) {
+                responder(intercambio, 405, error("Use POST"));
+                return;
+            }
+
+            // Content-Length declarado, si lo hay, y después una lectura acotada
+            String declarado = intercambio.getRequestHeaders().getFirst("Content-Length");
+            if (declarado != null && largoDeclarado(declarado) > maxCuerpo) {
+                responder(intercambio, 413, error("Cuerpo de más de " + maxCuerpo + " bytes"));
+                return;
+            }
+            byte[] bytes;
+            try (InputStream in = intercambio.getRequestBody()) {
+                bytes = in.readNBytes(maxCuerpo + 1);
+            }
+            if (bytes.length > maxCuerpo) {
+                responder(intercambio, 413, error("Cuerpo de más de " + maxCuerpo + " bytes"));
+                return;
+            }
+            Object cuerpo = new LectorJSON(new String(bytes, StandardCharsets.UTF_8)).leer();
+
+            boolean varios = cuerpo instanceof List;
+            List<?> usuarios = varios ? (List<?>) cuerpo : List.of(cuerpo);
+            if (usuarios.size() > maxUsuarios) {
+                responder(intercambio, 413, error("Demasiados usuarios por petición: " + usuarios.size()
+                        + " (máximo " + maxUsuarios + ")"));
+                return;
+            }
+
+            // Encolar todas antes de esperar para que compartan lote
+            List<CompletableFuture<Integer>> futuros = new ArrayList<>(usuarios.size());
+            for (Object u : usuarios) {
+                if (!(u instanceof Map)) throw new IllegalArgumentException("Se esperaba un objeto por usuario");
+                Map<?, ?> campos = (Map<?, ?>) u;
+                int k = entero(campos, "k", kPorDefecto);
+                if (k < 1) throw new IllegalArgumentException("k debe ser al menos 1");
+                futuros.add(agrupador.enviar(usuario(campos), k));
+            }
+
+            StringBuilder sb = new StringBuilder();
+            if (varios) sb.append('[');
+            for (int i = 0; i < futuros.size(); i++) {
+                int clase = futuros.get(i).get();
+                if (i > 0) sb.append(", ");
+                sb.append("{\"clase\": ").append(clase)
+                  .append(", \"prediccion\": \"").append(ModeloKNN.nombreClase(clase)).append("\"}");
+            }
+            if (varios) sb.append(']');
+            responder(intercambio, 200, sb.toString());
+        } catch (IllegalArgumentException e) {
+            responder(intercambio, 400, error(e.getMessage()));
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof AgrupadorLotes.NoDisponible) {
+                responder(intercambio, 503, error(causa.getMessage()));
+            } else {
+                // El detalle queda en el registro; el cliente no ve clases ni mensajes internos
+                causa.printStackTrace();
+                responder(intercambio, 500, error("Error interno"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responder(intercambio, 503, error("Interrumpido"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            responder(intercambio, 500, error("Error interno"));
+        } finally {
+            intercambio.close();
+            Metricas.latencia(Metricas.PETICION_HTTP, inicio);
+        }
+    }
+
+    // Content-Length no numérico: se trata como desconocido y manda la lectura acotada
+    private static long largoDeclarado(String valor) {
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Datos.Registro usuario(Map<?, ?> campos) {
+        for (String c : CAMPOS_NUMERICOS) {
+            if (!(campos.get(c) instanceof Double)) throw new IllegalArgumentException("Falta el campo numérico " + c);
+        }
+        return new Datos.Registro(
+                entero(campos, "age", 0), texto(campos, "gender"), texto(campos, "occupation"),
+                texto(campos, "deviceType"), numero(campos, "dailyPhoneHours"), numero(campos, "socialMediaHours"),
+                numero(campos, "workProductivityScore"), numero(campos, "sleepHours"), 0,
+                entero(campos, "appUsageCount", 0), numero(campos, "caffeineIntakeCups"),
+                numero(campos, "weekendScreenTimeHours"));
+    }
+
+    private static double numero(Map<?, ?> campos, String nombre) {
+        return (Double) campos.get(nombre);
+    }
+
+    private static int entero(Map<?, ?> campos, String nombre, int porDefecto) {
+        Object v = campos.get(nombre);
+        if (v == null) return porDefecto;
+        if (!(v instanceof Double) || (Double) v != Math.rint((Double) v) || Math.abs((Double) v) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("El campo " + nombre + " debe ser entero");
+        }
+        return (int) (double) (Double) v;
+    }
+
+    private static String texto(Map<?, ?> campos, String nombre) {
+        Object v = campos.get(nombre);
+        if (!(v instanceof String)) throw new IllegalArgumentException("Falta el campo de texto " + nombre);
+        return (String) v;
+    }
+
+    private static String error(String mensaje) {
+        StringBuilder sb = new StringBuilder("{\"error\": \"");
+        for (char c : String.valueOf(mensaje).toCharArray()) {
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append("\"}").toString();
+    }
+
+    private static void responder(HttpExchange intercambio, int estado, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        intercambio.sendResponseHeaders(estado, bytes.length);
+        try (OutputStream out = intercambio.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // =========================================================
+    // LECTOR JSON MÍNIMO
+    // =========================================================
+
+    /**
+     * Analizador JSON suficiente para las peticiones: objetos (LinkedHashMap),
+     * arreglos (ArrayList), cadenas, números (Double), true/false y null.
+     * Es recursivo: el anidamiento se limita para que un cuerpo como "[[[[..."
+     * sea un error 400 y no un desbordamiento de pila (las peticiones usan 2 niveles).
+     */
+    static class LectorJSON {
+        private static final int MAX_PROFUNDIDAD = 32;
+
+        private final String s;
+        private int pos;
+        private int profundidad;
+
+        LectorJSON(String s) { this.s = s; }
+
+        Object leer() {
+            Object v = valor();
+            espacios();
+            if (pos != s.length()) throw fallo("contenido después del valor");
+            return v;
+        }
+
+        private Object valor() {
+            espacios();
+            if (pos >= s.length()) throw fallo("fin inesperado");
+            char c = s.charAt(pos);
+            switch (c) {
+                case '{': return anidado(true);
+                case '[': return anidado(false);
+                case '"': return cadena();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default:  return numero();
+            }
+        }
+
+        private Object anidado(boolean esObjeto) {
+            if (++profundidad > MAX_PROFUNDIDAD) throw fallo("más de " + MAX_PROFUNDIDAD + " niveles de anidamiento");
+            try {
+                return esObjeto ? objeto() : arreglo();
+            } finally {
+                profundidad--;
+            }
+        }
+
+        private Map<String, Object> objeto() {
+            Map<String, Object> mapa = new LinkedHashMap<>();
+            pos++;
+            espacios();
+            if (consumir('}')) return mapa;
+            do {
+                espacios();
+                if (pos >= s.length() || s.charAt(pos) != '"') throw fallo("se esperaba una clave");
+                String clave = cadena();
+                espacios();
+                if (!consumir(':')) throw fallo("se esperaba ':'");
+                mapa.put(clave, valor());
+                espacios();
+            } while (consumir(','));
+            if (!consumir('}')) throw fallo("se esperaba '}'");
+            return mapa;
+        }
+
+        private List<Object> arreglo() {
+            List<Object> lista = new ArrayList<>();
+            pos++;
+            espacios();
+            if (consumir(']')) return lista;
+            do {
+                lista.add(valor());
+                espacios();
+            } while (consumir(','));
+            if (!consumir(']')) throw fallo("se esperaba ']'");
+            return lista;
+        }
+
+        private String cadena() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                if (pos >= s.length()) break;
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > s.length()) throw fallo("escape \\u incompleto");
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw fallo("escape \\u inválido");
+                        }
+                        pos += 4;
+                        break;
+                    default:  sb.append(e);
+                }
+            }
+            throw fallo("cadena sin cerrar");
+        }
+
+        private Double numero() {
+            int ini = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+            try {
+                return Double.valueOf(s.substring(ini, pos));
+            } catch (NumberFormatException e) {
+                throw fallo("valor inválido");
+            }
+        }
+
+        private Object literal(String texto, Object valor) {
+            if (!s.startsWith(texto, pos)) throw fallo("valor inválido");
+            pos += texto.length();
+            return valor;
+        }
+
+        private boolean consumir(char c) {
+            if (pos < s.length() && s.charAt(pos) == c) { pos++; return true; }
+            return false;
+        }
+
+        private void espacios() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private IllegalArgumentException fallo(String motivo) {
+            return new IllegalArgumentException("JSON inválido en la posición " + pos + ": " + motivo);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package backend.bench;
+
+import backend.Datos;
+import backend.Modelo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Carga del CSV (lector original y mapeado) y normalización. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class CargaBench {
+
+    @Param({"10000", "100000", "1000000"})
+    int filas;
+
+    private String               ruta;
+    private List<Datos.Registro> registros;
+    private PrintStream          salida;
+
+    @Setup
+    public void preparar() throws IOException {
+        ruta      = GeneradorDatos.archivo(filas);
+        registros = Escenario.registros(filas);
+        salida    = Escenario.silenciar();
+    }
+
+    @TearDown
+    public void terminar() {
+        System.setOut(salida);
+    }
+
+    @Benchmark
+    public List<Datos.Registro> cargarDatos() {
+        Datos datos = new Datos();
+        datos.cargarDatos(ruta);
+        return datos.getRegistros();
+    }
+
+    @Benchmark
+    public List<Datos.Registro> cargarDatosMapeado() {
+        Datos datos = new Datos();
+        datos.cargarDatosMapeado(ruta);
+        return datos.getRegistros();
+    }
+
+    @Benchmark
+    public List<double[]> normalizarDatos() {
+        return Modelo.normalizarDatos(registros);
+    }
+}
@@ -0,0 +1,99 @@
+package backend.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compara dos ejecuciones de la suite guardadas en CSV (-rf csv) y muestra,
+ * por benchmark y parámetros, la puntuación antes, después y el cambio.
+ *
+ * Flujo típico (desde Exportar-ML):
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar -rf csv -rff antes.csv      (o -rf json para otras herramientas)
+ *   ... cambio ...
+ *   java -jar target/benchmarks.jar -rf csv -rff despues.csv
+ *   java -cp target/benchmarks.jar backend.bench.CompararResultados antes.csv despues.csv
+ *
+ * En modo avgt un cambio negativo es una mejora; en thrpt, uno positivo.
+ */
+public class CompararResultados {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: CompararResultados <antes.csv> <despues.csv>");
+            return;
+        }
+        Map<String, String[]> antes   = leer(args[0]);
+        Map<String, String[]> despues = leer(args[1]);
+
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Antes", "Después", "Cambio");
+        for (Map.Entry<String, String[]> e : despues.entrySet()) {
+            String[] d = e.getValue();
+            String[] a = antes.get(e.getKey());
+            double nuevo = Double.parseDouble(d[1]);
+            if (a == null) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s%n", e.getKey(), "-", nuevo, "nuevo", d[2]);
+                continue;
+            }
+            double viejo = Double.parseDouble(a[1]);
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s%n",
+                    e.getKey(), viejo, nuevo, (nuevo - viejo) / viejo * 100.0, d[2]);
+        }
+    }
+
+    // Clave "benchmark modo param=valor ..." -> {modo, puntuación, unidad}
+    private static Map<String, String[]> leer(String ruta) throws IOException {
+        List<String> lineas = Files.readAllLines(Paths.get(ruta), StandardCharsets.UTF_8);
+        Map<String, String[]> resultados = new LinkedHashMap<>();
+        if (lineas.isEmpty()) return resultados;
+
+        List<String> cabecera = campos(lineas.get(0));
+        int colBench = cabecera.indexOf("Benchmark");
+        int colModo  = cabecera.indexOf("Mode");
+        int colScore = cabecera.indexOf("Score");
+        int colUnit  = cabecera.indexOf("Unit");
+        if (colBench < 0 || colModo < 0 || colScore < 0 || colUnit < 0) {
+            throw new IOException("No parece un CSV de JMH: " + ruta);
+        }
+
+        for (String linea : lineas.subList(1, lineas.size())) {
+            if (linea.isBlank()) continue;
+            List<String> c = campos(linea);
+            StringBuilder clave = new StringBuilder(c.get(colBench).replace("backend.bench.", ""))
+                    .append(' ').append(c.get(colModo));
+            for (int i = 0; i < cabecera.size(); i++) {
+                String col = cabecera.get(i);
+                if (col.startsWith("Param: ")) clave.append(' ').append(col.substring(7)).append('=').append(c.get(i));
+            }
+            resultados.put(clave.toString(), new String[]{c.get(colModo), c.get(colScore), c.get(colUnit)});
+        }
+        return resultados;
+    }
+
+    // Campos separados por comas; las comillas dobles agrupan
+    private static List<String> campos(String linea) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean comillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char ch = linea.charAt(i);
+            if (ch == '"') {
+                if (comillas && i + 1 < linea.length() && linea.charAt(i + 1) == '"') { actual.append('"'); i++; }
+                else comillas = !comillas;
+            } else if (ch == ',' && !comillas) {
+                campos.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(ch);
+            }
+        }
+        campos.add(actual.toString());
+        return campos;
+    }
+}
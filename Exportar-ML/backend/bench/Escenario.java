@@ -0,0 +1,63 @@
+package backend.bench;
+
+import backend.CargadorCSV;
+import backend.Datos;
+import backend.Modelo;
+import backend.ModeloKNN;
+import backend.Preprocesamiento;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Preparación común de los benchmarks: datos sintéticos, modelo entrenado
+ * (mismo 80/20 que Modelo.main, con barajado fijo) y salida silenciada para
+ * que los mensajes de Modelo no ensucien la medición.
+ */
+final class Escenario {
+
+    private static final long SEMILLA_BARAJADO = 42L;
+
+    private Escenario() { }
+
+    static List<Datos.Registro> registros(int filas) throws IOException {
+        return new CargadorCSV().cargar(GeneradorDatos.archivo(filas)).registros;
+    }
+
+    /** Modelo publicado en Modelo.servicio() y filas de prueba que no forman parte de él. */
+    static final class Particion {
+        final ModeloKNN      modelo;
+        final List<double[]> prueba;
+
+        Particion(ModeloKNN modelo, List<double[]> prueba) {
+            this.modelo = modelo;
+            this.prueba = prueba;
+        }
+    }
+
+    static Particion entrenar(int filas, String modoBusqueda) throws IOException {
+        List<Datos.Registro> registros = registros(filas);
+        Preprocesamiento prep = Preprocesamiento.ajustar(registros);
+        List<double[]> datos = new ArrayList<>(registros.size());
+        for (Datos.Registro r : registros) datos.add(prep.vectorizar(r));
+        Collections.shuffle(datos, new Random(SEMILLA_BARAJADO));
+
+        int corte = (int) (datos.size() * 0.8);
+        Modelo.setModoBusqueda(modoBusqueda);
+        ModeloKNN modelo = new ModeloKNN(prep, datos.subList(0, corte), modoBusqueda);
+        Modelo.servicio().publicar(modelo);
+        return new Particion(modelo, new ArrayList<>(datos.subList(corte, datos.size())));
+    }
+
+    /** Sustituye System.out por un flujo vacío; devuelve el anterior para restaurarlo. */
+    static PrintStream silenciar() {
+        PrintStream anterior = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return anterior;
+    }
+}
@@ -0,0 +1,68 @@
+package backend.bench;
+
+import backend.Modelo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento de Modelo.evaluarModelo con k=15 sobre un conjunto de prueba
+ * fijo; el resultado está en predicciones por segundo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class EvaluacionBench {
+
+    private static final int CONSULTAS = 2000;
+    private static final int K = 15;
+
+    @Param({"10000", "100000", "1000000"})
+    int filas;
+
+    @Param({"kd"})
+    String modo;
+
+    private List<double[]> entrenamiento;
+    private List<double[]> prueba;
+    private PrintStream    salida;
+
+    @Setup
+    public void preparar() throws IOException {
+        Escenario.Particion p = Escenario.entrenar(filas, modo);
+        entrenamiento = p.modelo.filas();
+        prueba = p.prueba.subList(0, Math.min(CONSULTAS, p.prueba.size()));
+        if (prueba.size() != CONSULTAS) throw new IllegalStateException("Prueba demasiado pequeña: " + prueba.size());
+        salida = Escenario.silenciar();
+    }
+
+    @TearDown
+    public void terminar() {
+        System.setOut(salida);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONSULTAS)
+    public Modelo.Evaluacion evaluarModelo() {
+        return Modelo.evaluarModelo(entrenamiento, prueba, K);
+    }
+}
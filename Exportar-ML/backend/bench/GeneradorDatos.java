@@ -0,0 +1,90 @@
+package backend.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Genera CSV sintéticos con el mismo esquema y rangos que
+ * "Stress level classification.csv" para los benchmarks (10k, 100k, 1M filas).
+ *
+ * Los archivos se guardan en java.io.tmpdir/knn-bench y se reutilizan entre
+ * ejecuciones; con la misma semilla el contenido es siempre el mismo.
+ *
+ * Uso directo:  java -cp target/benchmarks.jar backend.bench.GeneradorDatos salida.csv 100000
+ */
+public class GeneradorDatos {
+
+    public static final String ENCABEZADO = "User_ID,Age,Gender,Occupation,Device_Type,Daily_Phone_Hours,"
+            + "Social_Media_Hours,Work_Productivity_Score,Sleep_Hours,Stress_Level,App_Usage_Count,"
+            + "Caffeine_Intake_Cups,Weekend_Screen_Time_Hours";
+
+    private static final String[] GENEROS     = {"Male", "Female", "Other"};
+    private static final String[] OCUPACIONES = {"Student", "Professional", "Freelancer", "Business Owner"};
+    private static final String[] DISPOSITIVOS = {"Android", "iOS"};
+
+    private static final long SEMILLA = 20240601L;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: GeneradorDatos <salida.csv> <filas>");
+            return;
+        }
+        generar(Paths.get(args[0]), Integer.parseInt(args[1]), SEMILLA);
+    }
+
+    /** Ruta del CSV sintético de esa cantidad de filas, generándolo la primera vez. */
+    public static synchronized String archivo(int filas) throws IOException {
+        Path dir  = Paths.get(System.getProperty("java.io.tmpdir"), "knn-bench");
+        Path ruta = dir.resolve("estres-" + filas + "-" + SEMILLA + ".csv");
+        if (!Files.exists(ruta)) {
+            Files.createDirectories(dir);
+            // Se escribe aparte y se renombra para no dejar archivos a medias
+            Path temporal = Files.createTempFile(dir, "estres-", ".tmp");
+            generar(temporal, filas, SEMILLA);
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return ruta.toString();
+    }
+
+    public static void generar(Path ruta, int filas, long semilla) throws IOException {
+        Random rnd = new Random(semilla);
+        StringBuilder sb = new StringBuilder(128);
+        try (BufferedWriter out = Files.newBufferedWriter(ruta, StandardCharsets.UTF_8)) {
+            out.write(ENCABEZADO);
+            out.write('\n');
+            for (int i = 1; i <= filas; i++) {
+                sb.setLength(0);
+                sb.append('U').append(i).append(',');
+                sb.append(entre(rnd, 18, 60)).append(',');
+                sb.append(GENEROS[rnd.nextInt(GENEROS.length)]).append(',');
+                sb.append(OCUPACIONES[rnd.nextInt(OCUPACIONES.length)]).append(',');
+                sb.append(DISPOSITIVOS[rnd.nextInt(DISPOSITIVOS.length)]).append(',');
+                decimal(sb, entre(rnd, 10, 120)).append(',');  // Daily_Phone_Hours 1.0 - 12.0
+                decimal(sb, entre(rnd, 5, 80)).append(',');    // Social_Media_Hours 0.5 - 8.0
+                sb.append(entre(rnd, 1, 10)).append(',');      // Work_Productivity_Score
+                decimal(sb, entre(rnd, 40, 90)).append(',');   // Sleep_Hours 4.0 - 9.0
+                sb.append(entre(rnd, 1, 10)).append(',');      // Stress_Level
+                sb.append(entre(rnd, 5, 60)).append(',');      // App_Usage_Count
+                sb.append(entre(rnd, 0, 6)).append(',');       // Caffeine_Intake_Cups
+                decimal(sb, entre(rnd, 20, 140));              // Weekend_Screen_Time_Hours 2.0 - 14.0
+                sb.append('\n');
+                out.append(sb);
+            }
+        }
+    }
+
+    private static int entre(Random rnd, int min, int max) {
+        return min + rnd.nextInt(max - min + 1);
+    }
+
+    // Décimas como número con un decimal (53 -> "5.3")
+    private static StringBuilder decimal(StringBuilder sb, int decimas) {
+        return sb.append(decimas / 10).append('.').append(decimas % 10);
+    }
+}
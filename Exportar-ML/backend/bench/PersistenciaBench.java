@@ -0,0 +1,85 @@
+package backend.bench;
+
+import backend.Modelo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guardado y carga del modelo .knnm (la carga incluye construir el índice,
+ * como en Modelo.cargarModelo) y exportación del JSON del frontend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class PersistenciaBench {
+
+    @Param({"10000", "100000", "1000000"})
+    int filas;
+
+    private Path        dir;
+    private String      rutaModelo;
+    private String      rutaGuardado;
+    private String      rutaJSON;
+    private PrintStream salida;
+
+    @Setup
+    public void preparar() throws IOException {
+        Escenario.entrenar(filas, "kd");
+        dir          = Files.createTempDirectory("knn-persistencia");
+        rutaModelo   = dir.resolve("modelo.knnm").toString();
+        rutaGuardado = dir.resolve("guardado.knnm").toString();
+        rutaJSON     = dir.resolve("modelo_data.json").toString();
+        Modelo.guardarModelo(rutaModelo);
+        salida = Escenario.silenciar();
+    }
+
+    @TearDown
+    public void terminar() throws IOException {
+        System.setOut(salida);
+        Files.deleteIfExists(Path.of(rutaModelo));
+        Files.deleteIfExists(Path.of(rutaGuardado));
+        Files.deleteIfExists(Path.of(rutaJSON));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void guardarModelo() {
+        Modelo.guardarModelo(rutaGuardado);
+    }
+
+    @Benchmark
+    public void cargarModelo() {
+        Modelo.cargarModelo(rutaModelo);
+    }
+
+    @Benchmark
+    public void idaYVuelta() {
+        Modelo.guardarModelo(rutaGuardado);
+        Modelo.cargarModelo(rutaGuardado);
+    }
+
+    @Benchmark
+    public void exportarAJSON() {
+        Modelo.exportarAJSON(rutaJSON);
+    }
+}
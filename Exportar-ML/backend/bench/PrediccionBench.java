@@ -0,0 +1,62 @@
+package backend.bench;
+
+import backend.Modelo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de una consulta con Modelo.predictKNN según k, tamaño del
+ * entrenamiento y estrategia de búsqueda (añadir -p modo=simd con el módulo incubado).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class PrediccionBench {
+
+    // Consultas recorridas en círculo (potencia de 2)
+    private static final int CONSULTAS = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    int filas;
+
+    @Param({"1", "5", "15", "50"})
+    int k;
+
+    @Param({"kd", "bruta", "q8", "q16"})
+    String modo;
+
+    private List<double[]> entrenamiento;
+    private double[][]     consultas;
+    private int            siguiente;
+
+    @Setup
+    public void preparar() throws IOException {
+        Escenario.Particion p = Escenario.entrenar(filas, modo);
+        entrenamiento = p.modelo.filas();
+        consultas = new double[CONSULTAS][];
+        for (int i = 0; i < CONSULTAS; i++) consultas[i] = p.prueba.get(i % p.prueba.size());
+    }
+
+    @Benchmark
+    public int predictKNN() {
+        double[] consulta = consultas[siguiente++ & (CONSULTAS - 1)];
+        return Modelo.predictKNN(entrenamiento, consulta, k);
+    }
+}
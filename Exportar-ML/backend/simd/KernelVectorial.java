@@ -0,0 +1,53 @@
+package backend.simd;
+
+import backend.KernelDistancia;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Núcleo de distancias con la Vector API (jdk.incubator.vector).
+ *
+ * Cada carril procesa una fila del bloque: resta, multiplica y acumula por
+ * separado (sin FMA) y en el mismo orden de dimensiones que el bucle escalar,
+ * así que en doble precisión los resultados son idénticos bit a bit.
+ */
+public class KernelVectorial extends KernelDistancia {
+
+    private static final VectorSpecies<Double> ESPECIE_D = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float>  ESPECIE_F = FloatVector.SPECIES_PREFERRED;
+
+    // Acumulador float por hilo para volcar los carriles de una vez
+    private final ThreadLocal<float[]> carrilesF = ThreadLocal.withInitial(() -> new float[ESPECIE_F.length()]);
+
+    public KernelVectorial(double[] plano, int n, int dims, boolean float32) {
+        super(plano, n, dims, float32 ? ESPECIE_F.length() : ESPECIE_D.length(), float32);
+    }
+
+    @Override public boolean vectorial() { return true; }
+
+    @Override
+    public void distancias(double[] consulta, int bloque, double[] salida) {
+        int base = bloque * dims * ancho;
+
+        if (datosD != null) {
+            DoubleVector acc = DoubleVector.zero(ESPECIE_D);
+            for (int j = 0, col = base; j < dims; j++, col += ancho) {
+                DoubleVector diff = DoubleVector.broadcast(ESPECIE_D, consulta[j])
+                        .sub(DoubleVector.fromArray(ESPECIE_D, datosD, col));
+                acc = acc.add(diff.mul(diff));
+            }
+            acc.intoArray(salida, 0);
+        } else {
+            FloatVector acc = FloatVector.zero(ESPECIE_F);
+            for (int j = 0, col = base; j < dims; j++, col += ancho) {
+                FloatVector diff = FloatVector.broadcast(ESPECIE_F, (float) consulta[j])
+                        .sub(FloatVector.fromArray(ESPECIE_F, datosF, col));
+                acc = acc.add(diff.mul(diff));
+            }
+            float[] carriles = carrilesF.get();
+            acc.intoArray(carriles, 0);
+            for (int c = 0; c < ancho; c++) salida[c] = carriles[c];
+        }
+    }
+}
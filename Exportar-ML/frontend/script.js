@@ -1,12 +1,19 @@
 document.addEventListener('DOMContentLoaded', () => {
     let modelData = null;
 
-    // Cargar el modelo desde el JSON generado por Java
-    fetch('modelo_data.json')
-        .then(response => response.json())
+    // Cargar el modelo generado por Java: el JSON clásico, que predice igual que
+    // el backend. Con ?modelo=compacto se prueba antes el cuantizado (más ligero,
+    // pero con pérdida; ver ExportadorWeb) y, si no existe, el clásico
+    const inicioCarga = performance.now();
+    const usarCompacto = new URLSearchParams(window.location.search).get('modelo') === 'compacto';
+    const carga = usarCompacto
+        ? cargarModelo('modelo_compacto.json').catch(() => cargarModelo('modelo_data.json'))
+        : cargarModelo('modelo_data.json');
+    carga
         .then(data => {
             modelData = data;
             console.log("Modelo cargado:", modelData);
+            console.log(`Modelo listo en ${(performance.now() - inicioCarga).toFixed(0)} ms (${modelData.rows} filas)`);
             document.getElementById('status').innerText = "Modelo cargado y listo.";
             document.getElementById('predictBtn').disabled = false;
         })
@@ -15,6 +22,65 @@ document.addEventListener('DOMContentLoaded', () => {
             document.getElementById('status').innerText = "Error cargando modelo. Asegúrate de ejecutar el backend Java primero.";
         });
 
+    function cargarModelo(url) {
+        return fetch(url)
+            .then(response => {
+                if (!response.ok) throw new Error(`${url}: HTTP ${response.status}`);
+                return response.json();
+            })
+            .then(data => data.format ? decodificarCompacto(data) : aplanarClasico(data));
+    }
+
+    // Formato compacto: características uint8/uint16 en base64, clases uint8 en base64
+    function decodificarCompacto(data) {
+        const bytes = base64ABytes(data.features);
+        const crudos = data.format === 'knn-q16'
+            ? new Uint16Array(bytes.buffer, bytes.byteOffset, bytes.byteLength / 2)
+            : bytes;
+
+        const features = new Float64Array(crudos.length);
+        const escala = 1 / data.levels;
+        for (let i = 0; i < crudos.length; i++) features[i] = crudos[i] * escala;
+
+        const modelo = { ...data, features, labels: base64ABytes(data.labels) };
+        if (data.groupStarts) {
+            const inicios = base64ABytes(data.groupStarts);
+            const indices = base64ABytes(data.memberIndex);
+            modelo.groupStarts = new Uint32Array(inicios.buffer, inicios.byteOffset, inicios.byteLength / 4);
+            modelo.memberIndex = new Uint32Array(indices.buffer, indices.byteOffset, indices.byteLength / 4);
+            modelo.memberLabels = base64ABytes(data.memberLabels);
+        }
+        return modelo;
+    }
+
+    // Formato clásico: cada fila trae las características y la clase al final
+    function aplanarClasico(data) {
+        const rows = data.trainSet.length;
+        const dims = rows ? data.trainSet[0].length - 1 : 0;
+        const features = new Float64Array(rows * dims);
+        const labels = new Uint8Array(rows);
+        data.trainSet.forEach((fila, i) => {
+            for (let j = 0; j < dims; j++) features[i * dims + j] = fila[j];
+            labels[i] = fila[dims];
+        });
+        const modelo = { ranges: data.ranges, genderMap: data.genderMap, occupationMap: data.occupationMap,
+                         deviceMap: data.deviceMap, rows, dims, features, labels };
+        if (data.groupStarts) {
+            modelo.groupStarts = Uint32Array.from(data.groupStarts);
+            modelo.memberIndex = Uint32Array.from(data.memberIndex);
+            modelo.memberLabels = Uint8Array.from(data.memberLabels);
+        }
+        return modelo;
+    }
+
+    function base64ABytes(texto) {
+        const binario = atob(texto);
+        // Buffer alineado a 2 bytes para poder verlo como Uint16Array
+        const bytes = new Uint8Array(new ArrayBuffer(binario.length + (binario.length % 2)), 0, binario.length);
+        for (let i = 0; i < binario.length; i++) bytes[i] = binario.charCodeAt(i);
+        return bytes;
+    }
+
     document.getElementById('predictBtn').addEventListener('click', () => {
         if (!modelData) return;
 
@@ -83,33 +149,14 @@ document.addEventListener('DOMContentLoaded', () => {
         vec.push(norm(inputs.caffeine, r.minCaff, r.maxCaff));
         vec.push(norm(inputs.weekendScreen, r.minScreen, r.maxScreen));
 
-        // 2. KNN (k=15)
-        const k = 15;
-        const distancias = [];
-
-        // Calcular distancia con todos los puntos de entrenamiento
-        for (let i = 0; i < model.trainSet.length; i++) {
-            const trainVec = model.trainSet[i];
-            const dist = euclideanDist(vec, trainVec);
-            // La clase es el último elemento del vector de entrenamiento
-            const clase = trainVec[trainVec.length - 1];
-            distancias.push({ dist, clase });
-        }
-
-        // Ordenar
-        distancias.sort((a, b) => a.dist - b.dist);
+        // 2. KNN (k=15) y votación
+        if (model.rows === 0) return -1;
+        const votos = model.groupStarts ? votosAgrupados(vec, model, 15) : votosVecinos(vec, model, 15);
 
-        // Votar
-        const votos = {};
-        for (let i = 0; i < k; i++) {
-            const c = distancias[i].clase;
-            votos[c] = (votos[c] || 0) + 1;
-        }
-
-        // Ganador
+        // Ganador (a igual número de votos, la clase menor)
         let maxVotos = -1;
         let ganador = -1;
-        for (let c in votos) {
+        for (let c = 0; c < votos.length; c++) {
             if (votos[c] > maxVotos) {
                 maxVotos = votos[c];
                 ganador = c;
@@ -119,19 +166,78 @@ document.addEventListener('DOMContentLoaded', () => {
         return ganador; // 0, 1, 2
     }
 
+    // Quedarse con los k más cercanos sin ordenar todo
+    function votosVecinos(vec, model, kMax) {
+        const k = Math.min(kMax, model.rows);
+        const dims = model.dims;
+        const mejoresDist = new Float64Array(k).fill(Infinity);
+        const mejoresClase = new Int32Array(k);
+
+        for (let i = 0; i < model.rows; i++) {
+            const dist = distanciaCuadrada(vec, model.features, i * dims, dims);
+            if (dist >= mejoresDist[k - 1]) continue;
+
+            // Insertar en orden (a igual distancia se conserva el anterior)
+            let pos = k - 1;
+            while (pos > 0 && mejoresDist[pos - 1] > dist) {
+                mejoresDist[pos] = mejoresDist[pos - 1];
+                mejoresClase[pos] = mejoresClase[pos - 1];
+                pos--;
+            }
+            mejoresDist[pos] = dist;
+            mejoresClase[pos] = model.labels[i];
+        }
+
+        const votos = [0, 0, 0];
+        for (let i = 0; i < k; i++) votos[mejoresClase[i]]++;
+        return votos;
+    }
+
+    // Modelo compactado: cada fila es un grupo de filas originales. Se recorren los
+    // grupos por distancia y, a igual distancia, sus miembros por índice original,
+    // el mismo orden que sin compactar
+    function votosAgrupados(vec, model, kMax) {
+        const g = model.rows;
+        const dims = model.dims;
+        const inicios = model.groupStarts;
+        const dist = new Float64Array(g);
+        const orden = new Uint32Array(g);
+        for (let i = 0; i < g; i++) {
+            dist[i] = distanciaCuadrada(vec, model.features, i * dims, dims);
+            orden[i] = i;
+        }
+        orden.sort((a, b) => dist[a] - dist[b]);
+
+        const votos = [0, 0, 0];
+        let falta = Math.min(kMax, inicios[g]);
+        for (let p = 0; p < g && falta > 0; ) {
+            let q = p + 1;
+            while (q < g && dist[orden[q]] === dist[orden[p]]) q++;
+
+            const miembros = [];
+            for (let j = p; j < q; j++) {
+                for (let m = inicios[orden[j]]; m < inicios[orden[j] + 1]; m++) miembros.push(m);
+            }
+            if (q - p > 1) miembros.sort((a, b) => model.memberIndex[a] - model.memberIndex[b]);
+            for (let j = 0; j < miembros.length && falta > 0; j++, falta--) votos[model.memberLabels[miembros[j]]]++;
+            p = q;
+        }
+        return votos;
+    }
+
     function norm(val, min, max) {
         if (max === min) return 0;
         return (val - min) / (max - min);
     }
 
-    function euclideanDist(v1, v2) {
+    // Distancia al cuadrado (basta para ordenar) contra la fila que empieza en base
+    function distanciaCuadrada(vec, features, base, dims) {
         let sum = 0;
-        // v1 tiene length 11. v2 tiene 12 (inc clase). Iteramos sobre v1.length
-        for (let i = 0; i < v1.length; i++) {
-            let d = v1[i] - v2[i];
+        for (let j = 0; j < dims; j++) {
+            const d = vec[j] - features[base + j];
             sum += d * d;
         }
-        return Math.sqrt(sum);
+        return sum;
     }
 
     function mostrarResultado(clase) {